@@ -0,0 +1,52 @@
+/**
+ * Arithmetic on angles in radians. Angles are compared through their
+ * normalized difference, so headings and bearings may be given in any range
+ * and wrap around any number of times.
+ */
+public final class Angles
+{
+    public static final double TWO_PI = 2 * Math.PI;
+
+    private Angles() {
+    }
+
+    /**
+     * Wraps an angle to the range [-PI, PI)
+     * @param angle radians
+     * @return radians
+     */
+    public static double normalize(double angle) {
+        return angle - TWO_PI * Math.floor((angle + Math.PI) / TWO_PI);
+    }
+
+    /**
+     * Signed difference between two angles, positive when a lies counter-clockwise of b
+     * @param a radians
+     * @param b radians
+     * @return radians in [-PI, PI)
+     */
+    public static double difference(double a, double b) {
+        return normalize(a - b);
+    }
+
+    /**
+     * Size of the smaller angle between two angles
+     * @param a radians
+     * @param b radians
+     * @return radians in [0, PI]
+     */
+    public static double absDifference(double a, double b) {
+        return Math.abs(normalize(a - b));
+    }
+
+    /**
+     * Checks whether an angle lies strictly within halfWidth of the center of a sector
+     * @param angle radians
+     * @param center radians
+     * @param halfWidth radians
+     * @return boolean
+     */
+    public static boolean withinSector(double angle, double center, double halfWidth) {
+        return Math.abs(normalize(angle - center)) < halfWidth;
+    }
+}
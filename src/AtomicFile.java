@@ -0,0 +1,44 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes a file next to its final name and moves it into place in one step,
+ * so that a crash while writing leaves the previous file, never half of one.
+ */
+public final class AtomicFile
+{
+    /**
+     * Writes the content of a file
+     */
+    public interface Content
+    {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private AtomicFile() {
+    }
+
+    /**
+     * Replaces a file, creating its directory if needed
+     * @param file File
+     * @param content Content
+     * @throws IOException
+     */
+    public static void write(File file, Content content) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            content.write(out);
+        } finally {
+            out.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -4,24 +4,31 @@ public class BatteryResponse implements Response
 {
 
    private Map<String, Object> data;
+   private long timestamp;
+   private double remaining;
+   private double status;
 
    public void setData(Map<String, Object> data)
    {
       this.data = data;
+      timestamp = ((Number)data.get("TimeStamp")).longValue();
+      remaining = ResponseValues.toDouble(data.get("Remaining"));
+      status = ResponseValues.toDouble(data.get("Status"));
    }
 
    public double getRemaining()
    {
-      
-//      System.out.println(data.get("Remaining"));
-//      
-//      return 0;
-      return ((Integer)data.get("Remaining")).doubleValue();
+      return remaining;
    }
 
    public double getStatus()
    {
-      return Double.parseDouble( (String)data.get("Status") );
+      return status;
+   }
+
+   public Map<String, Object> getData()
+   {
+      return data;
    }
 
    public String getPath()
@@ -31,7 +38,7 @@ public class BatteryResponse implements Response
 
    public long getTimestamp()
    {
-      return (Long)data.get("TimeStamp");
+      return timestamp;
    }
 
 
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regression check for the replanning: drives a simulated lap with a static
+ * obstacle standing on the path, once for each of a number of places along it,
+ * and fails unless every lap finishes. Places the robot would be standing on at
+ * the start are left out, as the robot cannot get clear of them.
+ *
+ * Usage: BlockerLaps path.json speed [radius] [spacing]
+ */
+public class BlockerLaps
+{
+    private static final double CORRIDOR_WIDTH = 1.0;
+    private static final long CALL_MILLIS = 20;
+    private static final long TIME_LIMIT = 2 * 60 * 1000;
+    private static final double DEFAULT_RADIUS = 0.2;
+    private static final int DEFAULT_SPACING = 75;
+
+    private final Position[] path;
+    private final double speed;
+    private final double radius;
+    private final TuningProfile profile;
+
+    public BlockerLaps(Position[] path, double speed, double radius, TuningProfile profile) {
+        this.path = path;
+        this.speed = speed;
+        this.radius = radius;
+        this.profile = profile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Position[] path = Main.readPath(args[0]);
+        double radius = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_RADIUS;
+        int spacing = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SPACING;
+        BlockerLaps laps = new BlockerLaps(path, Double.parseDouble(args[1]), radius, TuningProfile.DEFAULT);
+        List<Integer> failed = laps.run(spacing);
+        if (!failed.isEmpty()) {
+            System.out.println("Laps failed with the obstacle at positions " + failed);
+            System.exit(1);
+        }
+        System.out.println("Every lap finished");
+    }
+
+    /**
+     * Drives a lap with the obstacle at every spacing-th position of the path
+     * @param spacing positions between the places of the obstacle
+     * @return the positions at which the lap failed
+     * @throws Exception when the controller fails, as opposed to the lap
+     */
+    public List<Integer> run(int spacing) throws Exception {
+        List<Integer> failed = new ArrayList<Integer>();
+        double startClearance = profile.getRobotRadius() + radius;
+        for (int i = spacing; i < path.length; i += spacing) {
+            if (Double.compare(path[i].getDistanceTo(path[0]), startClearance) <= 0) {
+                continue;
+            }
+            if (!lap(i)) {
+                failed.add(i);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Drives a simulated lap with the obstacle at a position of the path
+     * @param index of the position
+     * @return whether the lap finished
+     * @throws Exception when the controller fails, as opposed to the lap
+     */
+    private boolean lap(int index) throws Exception {
+        double[][] obstacles = {{path[index].getX(), path[index].getY(), radius}};
+        SimulatedRobot robot = new SimulatedRobot(path, obstacles, profile.getRobotRadius(),
+                CORRIDOR_WIDTH, CALL_MILLIS, TIME_LIMIT);
+        try {
+            new RoB1(robot, profile).run(path, speed);
+            System.out.println("Obstacle at position " + index + ": lap of " + robot.currentTimeMillis() + " ms");
+            return true;
+        } catch (SimulationException e) {
+            System.out.println("Obstacle at position " + index + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets RoB1 read the pose and the laser scan from a SensorBus, as a subscriber
+ * that only keeps the latest frame of each. Requests, and responses the bus does
+ * not carry, go straight to the link. Once the bus has received nothing for
+ * SensorBus.STALE_PERIODS polling periods, reading a frame fails instead of
+ * returning the last one over and over.
+ */
+public class BusRobotLink implements RobotLink
+{
+    private static final long FIRST_FRAME_TIMEOUT = 5000;
+
+    private final SensorBus bus;
+    private final RobotLink link;
+    private final Map<String, Response> latest = new ConcurrentHashMap<String, Response>();
+    private final SensorBus.Feed localizationFeed;
+    private final SensorBus.Feed laserFeed;
+
+    /**
+     * Create a link subscribed to the localization and laser frames of the bus
+     * @param bus SensorBus
+     * @param link the link the bus polls, must be thread safe
+     * @throws Exception
+     */
+    public BusRobotLink(SensorBus bus, RobotLink link) throws Exception {
+        this.bus = bus;
+        this.link = link;
+        SensorBus.Subscriber subscriber = new SensorBus.Subscriber() {
+            public void onSubscribe(SensorBus.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            public void onNext(Response frame) {
+                latest.put(frame.getPath(), frame);
+            }
+
+            public void onError(Throwable error) {
+                System.err.println("Sensor bus failed: " + error);
+            }
+
+            public void onComplete() {
+            }
+        };
+        localizationFeed = bus.subscribe(LocalizationResponse.class, subscriber, 1, SensorBus.Overflow.LATEST_ONLY);
+        laserFeed = bus.subscribe(LaserEchoesResponse.class, subscriber, 1, SensorBus.Overflow.LATEST_ONLY);
+    }
+
+    public int putRequest(Request r) throws Exception {
+        return link.putRequest(r);
+    }
+
+    /**
+     * Fills in the response from the latest frame of its type, waiting for the
+     * first one if none has arrived yet
+     * @param r response to fill in
+     * @return response same as parameter
+     * @throws Exception when there is no frame, or it has gone stale
+     */
+    public Response getResponse(Response r) throws Exception {
+        if (!r.getPath().equals("/lokarria/localization") && !r.getPath().equals("/lokarria/laser/echoes")) {
+            return link.getResponse(r);
+        }
+        long deadline = System.currentTimeMillis() + FIRST_FRAME_TIMEOUT;
+        Response frame = latest.get(r.getPath());
+        while (frame == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new Exception("No frame from " + r.getPath());
+            }
+            Thread.sleep(1);
+            frame = latest.get(r.getPath());
+        }
+        if (!bus.isFresh(r.getPath())) {
+            throw new Exception("No frame from " + r.getPath() + " since "
+                    + (System.currentTimeMillis() - bus.getReceivedAt(r.getPath())) + " ms");
+        }
+        //Skip parsing again when the frame has not changed
+        if (r.getData() != frame.getData()) {
+            r.setData(frame.getData());
+        }
+        return r;
+    }
+
+    public long currentTimeMillis() {
+        return link.currentTimeMillis();
+    }
+
+    public SensorBus.Feed getLocalizationFeed() {
+        return localizationFeed;
+    }
+
+    public SensorBus.Feed getLaserFeed() {
+        return laserFeed;
+    }
+}
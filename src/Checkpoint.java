@@ -0,0 +1,138 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * How far the robot had come on a mission, written when a leg starts and every
+ * INTERVAL milliseconds while driving so that a restarted controller can
+ * continue where the previous one stopped instead of at the start. Holds the
+ * number of the leg within the mission and the hash of its route, so a route
+ * driven twice in one mission is not mistaken for the other time, the route
+ * segment and arc length reached, and the look-ahead state of the controller.
+ * There is one checkpoint per directory; it is replaced in one step, so a crash
+ * while writing leaves the previous one intact.
+ */
+public class Checkpoint
+{
+    public static final long INTERVAL = 1000;
+    /** Route segments searched from the checkpointed one when resuming, mostly onwards */
+    public static final int SEARCH_WINDOW = 400;
+
+    private static final int MAGIC = 0x43504b31;
+    private static final int VERSION = 2;
+    private static final String FILE_NAME = "run.checkpoint";
+
+    private final int leg;
+    private final long routeHash;
+    private final int segment;
+    private final double arcLength;
+    private final double lookAheadDistance;
+    private final int positionsToSkip;
+
+    public Checkpoint(int leg, long routeHash, int segment, double arcLength, double lookAheadDistance,
+                      int positionsToSkip) {
+        this.leg = leg;
+        this.routeHash = routeHash;
+        this.segment = segment;
+        this.arcLength = arcLength;
+        this.lookAheadDistance = lookAheadDistance;
+        this.positionsToSkip = positionsToSkip;
+    }
+
+    /**
+     * Reads the checkpoint of a directory. A checkpoint that cannot be read, e.g.
+     * one cut short or written by another version, is reported and ignored.
+     * @param directory File
+     * @return Checkpoint, or null if there is none that can be used
+     */
+    public static Checkpoint read(File directory) {
+        File file = new File(directory, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                    throw new IOException("not a checkpoint of this version");
+                }
+                return new Checkpoint(in.readInt(), in.readLong(), in.readInt(), in.readDouble(),
+                        in.readDouble(), in.readInt());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring checkpoint " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the checkpoint, replacing the previous one in one step
+     * @param directory File
+     * @throws IOException
+     */
+    public void save(File directory) throws IOException {
+        AtomicFile.write(new File(directory, FILE_NAME), new AtomicFile.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(leg);
+                out.writeLong(routeHash);
+                out.writeInt(segment);
+                out.writeDouble(arcLength);
+                out.writeDouble(lookAheadDistance);
+                out.writeInt(positionsToSkip);
+            }
+        });
+    }
+
+    /**
+     * Removes the checkpoint of a directory, once the mission it belongs to is finished
+     * @param directory File
+     * @throws IOException
+     */
+    public static void delete(File directory) throws IOException {
+        Files.deleteIfExists(new File(directory, FILE_NAME).toPath());
+    }
+
+    /**
+     * Number of the leg within its mission, counted from 0
+     * @return int
+     */
+    public int getLeg() {
+        return leg;
+    }
+
+    public long getRouteHash() {
+        return routeHash;
+    }
+
+    /**
+     * Route segment the robot was closest to
+     * @return index of the first position of the segment
+     */
+    public int getSegment() {
+        return segment;
+    }
+
+    /**
+     * Distance along the route the robot had come
+     * @return meters
+     */
+    public double getArcLength() {
+        return arcLength;
+    }
+
+    public double getLookAheadDistance() {
+        return lookAheadDistance;
+    }
+
+    public int getPositionsToSkip() {
+        return positionsToSkip;
+    }
+}
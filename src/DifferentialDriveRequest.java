@@ -23,6 +23,16 @@ public class DifferentialDriveRequest implements Request
       data.put("TargetAngularSpeed", angularSpeed);
    }
 
+   public double getLinearSpeed()
+   {
+      return (Double)data.get("TargetLinearSpeed");
+   }
+
+   public double getAngularSpeed()
+   {
+      return (Double)data.get("TargetAngularSpeed");
+   }
+
    public HashMap<String, Object> getData()
    {
       return data;
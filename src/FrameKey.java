@@ -0,0 +1,47 @@
+/**
+ * Remembers which sensor frames a cached result was computed from, so that a
+ * stage of the controller can skip its work until one of its inputs is newer.
+ * Frames are identified by their TimeStamp; other inputs by identity.
+ */
+public class FrameKey
+{
+    private boolean valid;
+    private long first;
+    private long second;
+    private Object other;
+
+    /**
+     * Records the inputs of a stage that depends on one frame
+     * @param frame long
+     * @return true if the frame differs from last time, i.e. the stage must recompute
+     */
+    public boolean changed(long frame) {
+        return changed(frame, 0, null);
+    }
+
+    /**
+     * Records the inputs of a stage
+     * @param first timestamp of a frame
+     * @param second timestamp of another frame
+     * @param other any other input, compared by identity
+     * @return true if an input differs from last time, i.e. the stage must recompute
+     */
+    public boolean changed(long first, long second, Object other) {
+        if (valid && first == this.first && second == this.second && other == this.other) {
+            return false;
+        }
+        valid = true;
+        this.first = first;
+        this.second = second;
+        this.other = other;
+        return true;
+    }
+
+    /**
+     * Forgets the inputs, so the next call to changed returns true
+     */
+    public void invalidate() {
+        valid = false;
+        other = null;
+    }
+}
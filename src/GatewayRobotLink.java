@@ -0,0 +1,123 @@
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.URL;
+
+/**
+ * Reaches the robot through a SensorGateway. The pose and the laser scan come
+ * from combined frames, either fetched from the gateway or pushed by it over
+ * UDP; everything else is sent to the gateway, which forwards it to the robot.
+ * A pushed frame older than PUSH_TIMEOUT is not used; frames are fetched
+ * instead until pushing resumes, so a lost push stream shows up as a failing
+ * fetch rather than as a robot that seems to stand still.
+ */
+public class GatewayRobotLink implements RobotLink
+{
+    public static final long PUSH_TIMEOUT = 500;
+
+    private final HttpRobotLink gateway;
+    private final URL frameUrl;
+    private volatile SensorFrame pushed;
+    private volatile long pushedAt;
+    private SensorFrame frame;
+    private boolean poseServed;
+    private boolean laserServed;
+
+    /**
+     * Create a link that fetches frames from the gateway at host "host" and port "port"
+     * @param host String
+     * @param port int
+     * @throws Exception
+     */
+    public GatewayRobotLink(String host, int port) throws Exception {
+        this.gateway = new HttpRobotLink(host, port);
+        this.frameUrl = new URL(host + ":" + port + "/frame");
+    }
+
+    /**
+     * Create a link that receives frames pushed by the gateway to the given UDP port
+     * @param host String
+     * @param port int
+     * @param pushPort int
+     * @throws Exception
+     */
+    public GatewayRobotLink(String host, int port, int pushPort) throws Exception {
+        this(host, port);
+        final DatagramSocket socket = new DatagramSocket(pushPort);
+        Thread receiver = new Thread(new Runnable() {
+            public void run() {
+                byte[] buffer = new byte[65536];
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                while (!socket.isClosed()) {
+                    try {
+                        socket.receive(packet);
+                        SensorFrame decoded = SensorFrame.decode(packet.getData(), packet.getLength());
+                        pushedAt = System.currentTimeMillis();
+                        pushed = decoded;
+                    } catch (Exception e) {
+                        System.err.println("Receiving frame failed: " + e);
+                    }
+                }
+            }
+        }, "gateway-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public int putRequest(Request r) throws Exception {
+        return gateway.putRequest(r);
+    }
+
+    /**
+     * Fills in a localization or laser response from a frame. A new frame is
+     * taken when the requested part of the current one has already been used.
+     * @param r response to fill in
+     * @return response same as parameter
+     * @throws Exception
+     */
+    public Response getResponse(Response r) throws Exception {
+        if (r instanceof LocalizationResponse) {
+            if (frame == null || poseServed) {
+                nextFrame();
+            }
+            poseServed = true;
+            r.setData(frame.localizationData());
+            return r;
+        }
+        if (r instanceof LaserEchoesResponse) {
+            if (frame == null || laserServed) {
+                nextFrame();
+            }
+            laserServed = true;
+            frame.fillLaser((LaserEchoesResponse) r);
+            return r;
+        }
+        return gateway.getResponse(r);
+    }
+
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void nextFrame() throws Exception {
+        //Until the first frame has been pushed, and whenever pushing has stopped, fetch it
+        SensorFrame latest = pushed;
+        boolean fresh = latest != null && System.currentTimeMillis() - pushedAt <= PUSH_TIMEOUT;
+        frame = fresh ? latest : fetchFrame();
+        poseServed = false;
+        laserServed = false;
+    }
+
+    private SensorFrame fetchFrame() throws Exception {
+        InputStream in = frameUrl.openStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+        byte[] buffer = new byte[2048];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        in.close();
+        return SensorFrame.decode(bytes.toByteArray(), bytes.size());
+    }
+}
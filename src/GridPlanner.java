@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * A* search over an OccupancyGrid with 8-connected moves.
+ * The open set is a binary heap of cell indices and all per-cell bookkeeping is
+ * kept in primitive arrays. The arrays are reused between searches on grids of
+ * the same size; a search counter tells which entries belong to the current search.
+ */
+public class GridPlanner
+{
+    private static final float DIAGONAL = (float) Math.sqrt(2);
+    private static final int[] STEP_X = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] STEP_Y = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    private final double clearance;
+
+    private boolean[] blocked = new boolean[0];
+    private float[] cost = new float[0];
+    private int[] parent = new int[0];
+    private int[] seen = new int[0];
+    private boolean[] closed = new boolean[0];
+    private int search;
+
+    private int[] heapCells = new int[64];
+    private float[] heapKeys = new float[64];
+    private int heapSize;
+
+    /**
+     * Create a planner that keeps paths at least the given distance from obstacles
+     * @param clearance meters, normally the radius of the robot
+     */
+    public GridPlanner(double clearance) {
+        this.clearance = clearance;
+    }
+
+    /**
+     * Plans a path between two points
+     * @param grid OccupancyGrid
+     * @param start Position
+     * @param goal Position
+     * @return the path, starting after start and ending at goal, or null if there is none
+     */
+    public Position[] plan(OccupancyGrid grid, Position start, Position goal) {
+        int width = grid.getWidth();
+        int startX = grid.toColumn(start.getX());
+        int startY = grid.toRow(start.getY());
+        int goalX = grid.toColumn(goal.getX());
+        int goalY = grid.toRow(goal.getY());
+        if (!grid.contains(startX, startY) || !grid.contains(goalX, goalY)) {
+            return null;
+        }
+        prepare(grid);
+        int inflation = (int) Math.ceil(clearance / grid.getResolution());
+        //The robot is standing at the start, so whatever is marked around it can be passed
+        setBlocked(grid, startX, startY, inflation, false);
+        int startCell = grid.index(startX, startY);
+        int goalCell = grid.index(goalX, goalY);
+        if (blocked[goalCell]) {
+            return null;
+        }
+
+        open(startCell, 0, -1, heuristic(startX, startY, goalX, goalY));
+        while (heapSize > 0) {
+            int cell = pop();
+            if (closed[cell]) {
+                continue;
+            }
+            if (cell == goalCell) {
+                return reconstruct(grid, cell);
+            }
+            closed[cell] = true;
+            int x = cell % width;
+            int y = cell / width;
+            for (int k = 0; k < STEP_X.length; k++) {
+                int nx = x + STEP_X[k];
+                int ny = y + STEP_Y[k];
+                if (!grid.contains(nx, ny)) {
+                    continue;
+                }
+                int next = grid.index(nx, ny);
+                if (blocked[next] || (seen[next] == search && closed[next])) {
+                    continue;
+                }
+                //Do not cut corners between two blocked cells
+                if (k >= 4 && (blocked[grid.index(nx, y)] || blocked[grid.index(x, ny)])) {
+                    continue;
+                }
+                float g = cost[cell] + (k < 4 ? 1 : DIAGONAL);
+                if (seen[next] != search || g < cost[next]) {
+                    open(next, g, cell, g + heuristic(nx, ny, goalX, goalY));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resizes the arrays if needed, starts a new search and inflates the obstacles
+     * @param grid OccupancyGrid
+     */
+    private void prepare(OccupancyGrid grid) {
+        int cells = grid.getWidth() * grid.getHeight();
+        if (cost.length != cells) {
+            blocked = new boolean[cells];
+            cost = new float[cells];
+            parent = new int[cells];
+            seen = new int[cells];
+            closed = new boolean[cells];
+            search = 0;
+        } else {
+            Arrays.fill(blocked, false);
+        }
+        search++;
+        heapSize = 0;
+        int inflation = (int) Math.ceil(clearance / grid.getResolution());
+        for (int cell = 0; cell < cells; cell++) {
+            if (grid.isOccupied(cell)) {
+                setBlocked(grid, cell % grid.getWidth(), cell / grid.getWidth(), inflation, true);
+            }
+        }
+    }
+
+    private void setBlocked(OccupancyGrid grid, int cx, int cy, int radius, boolean value) {
+        for (int y = cy - radius; y <= cy + radius; y++) {
+            for (int x = cx - radius; x <= cx + radius; x++) {
+                if (grid.contains(x, y) && (x - cx) * (x - cx) + (y - cy) * (y - cy) <= radius * radius) {
+                    blocked[grid.index(x, y)] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Octile distance, the exact cost of an unobstructed 8-connected path
+     */
+    private float heuristic(int x, int y, int goalX, int goalY) {
+        int dx = Math.abs(goalX - x);
+        int dy = Math.abs(goalY - y);
+        return Math.max(dx, dy) + (DIAGONAL - 1) * Math.min(dx, dy);
+    }
+
+    private Position[] reconstruct(OccupancyGrid grid, int goalCell) {
+        int length = 0;
+        for (int cell = goalCell; parent[cell] != -1; cell = parent[cell]) {
+            length++;
+        }
+        Position[] path = new Position[length];
+        for (int cell = goalCell; parent[cell] != -1; cell = parent[cell]) {
+            path[--length] = grid.toPosition(cell);
+        }
+        return path;
+    }
+
+    /**
+     * Adds a cell to the open set. A cell that is already open is pushed again
+     * with its lower key; the stale entry is skipped when it is popped.
+     */
+    private void open(int cell, float g, int from, float key) {
+        if (seen[cell] != search) {
+            seen[cell] = search;
+            closed[cell] = false;
+        }
+        cost[cell] = g;
+        parent[cell] = from;
+        if (heapSize == heapCells.length) {
+            heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) / 2;
+            if (heapKeys[up] <= key) {
+                break;
+            }
+            heapCells[i] = heapCells[up];
+            heapKeys[i] = heapKeys[up];
+            i = up;
+        }
+        heapCells[i] = cell;
+        heapKeys[i] = key;
+    }
+
+    private int pop() {
+        int top = heapCells[0];
+        int lastCell = heapCells[--heapSize];
+        float lastKey = heapKeys[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (lastKey <= heapKeys[child]) {
+                break;
+            }
+            heapCells[i] = heapCells[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        heapCells[i] = lastCell;
+        heapKeys[i] = lastKey;
+        return top;
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Talks to Lokarria over HTTP.
+ * It uses Java -> JSON -> HttpRequest -> Network -> DssHost32 -> Lokarria(Robulab) -> Core -> MRDS4
+ *
+ * @author thomasj
+ */
+public class HttpRobotLink implements RobotLink
+{
+    private String host;
+    private int port;
+    private ObjectMapper mapper = new ObjectMapper();
+
+   /**
+    * Create a link to host "host" at port "port"
+    * @param host normally http://127.0.0.1
+    * @param port normally 50000
+    */
+   public HttpRobotLink(String host, int port) {
+       this.host = host;
+       this.port = port;
+   }
+
+   /**
+    * Send a request to the robot.
+    * @param r request to send
+    * @return response code from the connection (the web server)
+    * @throws Exception
+    */
+   public int putRequest(Request r) throws Exception
+   {
+      URL url = new URL(host + ":" + port + r.getPath());
+
+      HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+
+      connection.setDoOutput(true);
+
+      connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setUseCaches (false);
+
+      OutputStreamWriter out = new OutputStreamWriter(
+            connection.getOutputStream());
+
+      // construct a JSON string
+      String json = mapper.writeValueAsString(r.getData());
+
+      // write it to the web server
+      out.write(json);
+      out.close();
+
+      // wait for response code
+      int rc = connection.getResponseCode();
+
+      return rc;
+   }
+
+   /**
+    * Get a response from the robot
+    * @param r response to fill in
+    * @return response same as parameter
+    * @throws Exception
+    */
+   public Response getResponse(Response r) throws Exception
+   {
+      URL url = new URL(host + ":" + port + r.getPath());
+
+      // open a connection to the web server and then get the resulting data
+      URLConnection connection = url.openConnection();
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+            connection.getInputStream()));
+
+      // map it to a Java Map
+      Map<String, Object> data = mapper.readValue(in, Map.class);
+      r.setData(data);
+      in.close();
+
+      return r;
+   }
+
+   public long currentTimeMillis()
+   {
+      return System.currentTimeMillis();
+   }
+}
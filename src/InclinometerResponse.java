@@ -3,20 +3,31 @@ import java.util.Map;
 public class InclinometerResponse implements Response
 {
    private Map<String, Object> data;
+   private long timestamp;
+   private double pitchAngle;
+   private double rollAngle;
 
    public void setData(Map<String, Object> data)
    {
       this.data = data;
+      timestamp = ((Number)data.get("TimeStamp")).longValue();
+      pitchAngle = ResponseValues.toDouble(data.get("PitchAngle"));
+      rollAngle = ResponseValues.toDouble(data.get("RollAngle"));
    }
 
    public double getPitchAngle()
    {
-      return Double.parseDouble( (String)data.get("PitchAngle") );
+      return pitchAngle;
    }
 
    public double getRollAngle()
    {
-      return Double.parseDouble( (String)data.get("RollAngle") );
+      return rollAngle;
+   }
+
+   public Map<String, Object> getData()
+   {
+      return data;
    }
 
    public String getPath()
@@ -26,9 +37,7 @@ public class InclinometerResponse implements Response
    
    public long getTimestamp()
    {
-      return (Long)data.get("TimeStamp");
+      return timestamp;
    }
 
 }
-
-
@@ -1,31 +1,67 @@
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
 public class LaserEchoesResponse implements Response
 {
    private Map<String, Object> data;
+   private double[] echoes = new double[0];
+   private long timestamp;
 
    public void setData(Map<String, Object> data)
    {
       this.data = data;
+      timestamp = ((Number)data.get("TimeStamp")).longValue();
+      List<?> list = (List<?>)data.get("Echoes");
+      if (echoes.length != list.size()) {
+         echoes = new double[list.size()];
+      }
+      for (int i= 0 ; i < echoes.length; i++) {
+         echoes[i] = ((Number) list.get(i)).doubleValue();
+      }
    }
 
+   /**
+    * Fills in the scan without going through a JSON map, for echoes that
+    * arrive in binary form. getData builds the map only if it is asked for.
+    * @param timestamp long
+    * @param echoes float[]
+    */
+   public void setEchoes(long timestamp, float[] echoes)
+   {
+      data = null;
+      this.timestamp = timestamp;
+      if (this.echoes.length != echoes.length) {
+         this.echoes = new double[echoes.length];
+      }
+      for (int i = 0; i < echoes.length; i++) {
+         this.echoes[i] = echoes[i];
+      }
+   }
+
+   /**
+    * The echoes of the last scan. The array is reused, and overwritten by the next scan.
+    * @return double[]
+    */
    public double[] getEchoes()
    {
-      ArrayList echoes = (ArrayList)data.get("Echoes");
-
-      Object[] list = echoes.toArray();
-      double[] result = new double[list.length];
-      for (int i= 0 ; i < result.length; i++) {
-         if(list[i].getClass() == Double.class){
-            result[i] = (Double) list[i];
-         } else {
-            result[i] = new Double(list[i].toString());
+      return echoes;
+   }
+
+   public Map<String, Object> getData()
+   {
+      if (data == null) {
+         ArrayList<Double> list = new ArrayList<Double>(echoes.length);
+         for (double echo : echoes) {
+            list.add(echo);
          }
+         data = new HashMap<String, Object>();
+         data.put("Echoes", list);
+         data.put("TimeStamp", timestamp);
       }
-
-      return result;
+      return data;
    }
 
    public String getPath()
@@ -35,7 +71,7 @@ public class LaserEchoesResponse implements Response
 
    public long getTimestamp()
    {
-      return (Long)data.get("TimeStamp");
+      return timestamp;
    }
 
 }
@@ -0,0 +1,71 @@
+/**
+ * Fixed geometry of the laser scanner: one echo per degree, with the echo at
+ * CENTER_INDEX pointing straight ahead and angles growing counter-clockwise.
+ * Sine and cosine of every beam are precomputed so that callers can walk a
+ * scan without calling trigonometric functions.
+ */
+public final class LaserGeometry
+{
+    public static final int CENTER_INDEX = 136;
+    public static final int BEAM_COUNT = 271;
+    public static final double MAX_RANGE = 20;
+
+    private static final double[] ANGLE = new double[BEAM_COUNT];
+    private static final double[] COS = new double[BEAM_COUNT];
+    private static final double[] SIN = new double[BEAM_COUNT];
+
+    static {
+        for (int i = 0; i < BEAM_COUNT; i++) {
+            ANGLE[i] = Math.toRadians(i - CENTER_INDEX);
+            COS[i] = Math.cos(ANGLE[i]);
+            SIN[i] = Math.sin(ANGLE[i]);
+        }
+    }
+
+    private LaserGeometry() {
+    }
+
+    /**
+     * Angle of a beam relative to the robot heading, in radians
+     * @param index int
+     * @return double
+     */
+    public static double angle(int index) {
+        return ANGLE[index];
+    }
+
+    /**
+     * Number of beams between the center beam and the beam closest to an angle
+     * @param angle radians relative to the robot heading
+     * @return int, positive counter-clockwise
+     */
+    public static int beamOffset(double angle) {
+        return (int) Math.round(Math.toDegrees(angle));
+    }
+
+    public static double cos(int index) {
+        return COS[index];
+    }
+
+    public static double sin(int index) {
+        return SIN[index];
+    }
+
+    /**
+     * Number of beams of a scan that can be used, i.e. that have a known geometry
+     * @param echoes double[]
+     * @return int
+     */
+    public static int usableBeams(double[] echoes) {
+        return Math.min(echoes.length, BEAM_COUNT);
+    }
+
+    /**
+     * Checks whether an echo hit something, as opposed to running out of range
+     * @param range double
+     * @return boolean
+     */
+    public static boolean isHit(double range) {
+        return range > 0 && range < MAX_RANGE;
+    }
+}
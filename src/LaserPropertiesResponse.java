@@ -34,6 +34,11 @@ public class LaserPropertiesResponse implements Response
       return new double[] {x, y, z};
    }
 
+   public Map<String, Object> getData()
+   {
+      return data;
+   }
+
    public String getPath()
    {
       return "/lokarria/laser/properties";
@@ -0,0 +1,51 @@
+/**
+ * A path that has been prepared for driving: parsed, measured as a Route, with
+ * its speed map loaded and an empty occupancy grid allocated over it.
+ * Created by RoB1.prepare, which may run while the robot drives another leg.
+ */
+public class Leg
+{
+    private final int number;
+    private final String name;
+    private final Position[] path;
+    private final Route route;
+    private final SpeedMap speedMap;
+    private final OccupancyGrid grid;
+
+    public Leg(int number, String name, Position[] path, Route route, SpeedMap speedMap, OccupancyGrid grid) {
+        this.number = number;
+        this.name = name;
+        this.path = path;
+        this.route = route;
+        this.speedMap = speedMap;
+        this.grid = grid;
+    }
+
+    /**
+     * Number of the leg within its mission, counted from 0
+     * @return int
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Position[] getPath() {
+        return path;
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    public SpeedMap getSpeedMap() {
+        return speedMap;
+    }
+
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+}
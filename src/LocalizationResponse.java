@@ -6,10 +6,12 @@ import java.util.Set;
 public class LocalizationResponse implements Response
 {
    private Map<String, Object> data;
+   private long timestamp;
 
    public void setData(Map<String, Object> data)
    {
       this.data = data;
+      timestamp = ((Number)data.get("TimeStamp")).longValue();
    }
 
    public double[] getOrientation()
@@ -53,6 +55,12 @@ public class LocalizationResponse implements Response
    {
       return (Integer)data.get("Status");
    }
+
+   public Map<String, Object> getData()
+   {
+      return data;
+   }
+
    public String getPath()
    {
       return "/lokarria/localization";
@@ -60,7 +68,7 @@ public class LocalizationResponse implements Response
 
    public long getTimestamp()
    {
-      return (Long)data.get("TimeStamp");
+      return timestamp;
    }
 
 }
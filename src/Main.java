@@ -2,15 +2,87 @@
 import com.fasterxml.jackson.databind.*;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Usage: Main path.json[,path.json...] speed [profile.json] [--gateway=http://host:port [--push=udpPort]]
+ *        [--bus=poseMillis:laserMillis] [--speedmaps=directory] [--reports=directory]
+ *        [--checkpoints=directory] [--resume] [--slowsensors=batteryMillis:inclinometerMillis|off]
+ */
 public class Main {
 
     public static void main(String[] args) throws Exception {
-        Position[] path = readPath(args[0]);
-        RoB1 robot = new RoB1("http://127.0.0.1", 50000);
-        robot.run(path, new Double(args[1]));
+        List<String> arguments = new ArrayList<String>();
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int split = arg.indexOf('=');
+                options.put(arg.substring(2, split < 0 ? arg.length() : split),
+                        split < 0 ? "" : arg.substring(split + 1));
+            } else {
+                arguments.add(arg);
+            }
+        }
+        TuningProfile profile = arguments.size() > 2
+                ? TuningProfile.read(new File(arguments.get(2))) : TuningProfile.DEFAULT;
+        RobotLink link = createLink(options);
+        if (options.containsKey("bus")) {
+            String[] periods = options.get("bus").split(":");
+            SensorBus bus = new SensorBus(link);
+            bus.poll(LocalizationResponse.class, Long.parseLong(periods[0]));
+            bus.poll(LaserEchoesResponse.class, Long.parseLong(periods[1]));
+            link = new BusRobotLink(bus, link);
+        }
+        RoB1 robot = new RoB1(link, profile);
+        String slowSensors = options.containsKey("slowsensors") ? options.get("slowsensors") : "5000:1000";
+        if (!slowSensors.equals("off")) {
+            String[] periods = slowSensors.split(":");
+            //A bus of their own, so that a slow answer never delays the frames the controller waits for
+            SlowSensorPoller poller = new SlowSensorPoller(new SensorBus(link));
+            poller.start(Long.parseLong(periods[0]), Long.parseLong(periods[1]));
+            robot.setSlowSensors(poller);
+        }
+        robot.setSpeedMapDirectory(new File(options.containsKey("speedmaps")
+                ? options.get("speedmaps") : "speedmaps"));
+        robot.setReportDirectory(new File(options.containsKey("reports")
+                ? options.get("reports") : "reports"));
+        robot.setCheckpointDirectory(new File(options.containsKey("checkpoints")
+                ? options.get("checkpoints") : "checkpoints"));
+        if (options.containsKey("resume")) {
+            Checkpoint checkpoint = robot.resume();
+            System.out.println(checkpoint != null
+                    ? String.format("Resuming at %.1f m", checkpoint.getArcLength())
+                    : "No checkpoint, starting from the beginning");
+        }
+        MissionRunner mission = new MissionRunner(robot);
+        for (String leg : arguments.get(0).split(",")) {
+            mission.add(leg);
+        }
+        mission.run(new Double(arguments.get(1)));
+    }
+
+    /**
+     * Connects to Lokarria directly, or through a SensorGateway if one is given
+     * @param options Map
+     * @return RobotLink
+     * @throws Exception
+     */
+    private static RobotLink createLink( Map<String, String> options ) throws Exception {
+        String gateway = options.get("gateway");
+        if (gateway == null) {
+            return new HttpRobotLink("http://127.0.0.1", 50000);
+        }
+        int split = gateway.lastIndexOf(':');
+        String host = gateway.substring(0, split);
+        int port = Integer.parseInt(gateway.substring(split + 1));
+        if (options.containsKey("push")) {
+            return new GatewayRobotLink(host, port, Integer.parseInt(options.get("push")));
+        }
+        return new GatewayRobotLink(host, port);
     }
 
     /**
@@ -19,7 +91,7 @@ public class Main {
      * @return Position[]
      * @throws Exception
      */
-    private static Position[] readPath( String pathString ) throws Exception {
+    static Position[] readPath( String pathString ) throws Exception {
         BufferedReader in = new BufferedReader(new InputStreamReader(
                 new FileInputStream(new File(pathString))));
         ObjectMapper mapper = new ObjectMapper();
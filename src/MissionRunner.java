@@ -0,0 +1,123 @@
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Drives a queue of path files one leg after the other. While a leg is being
+ * driven the next one is read and prepared on a background thread. The robot
+ * keeps going from one leg into the next only if the next one is ready when
+ * the current one ends; otherwise it stops and waits. Legs may be added while
+ * driving. If the mission fails the robot is stopped.
+ * Legs are numbered in the order they are driven. When the robot resumes from
+ * a checkpoint, the legs before the one the checkpoint belongs to are taken as
+ * driven and skipped, and the checkpoint is removed once the last leg is done.
+ */
+public class MissionRunner
+{
+    private final RoB1 robot;
+    private final BlockingQueue<String> legs = new LinkedBlockingQueue<String>();
+    private int nextNumber;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(Threads.daemon("mission-loader"));
+
+    public MissionRunner(RoB1 robot) {
+        this.robot = robot;
+    }
+
+    /**
+     * Adds a leg at the end of the mission
+     * @param pathFile path of a path.json file
+     */
+    public void add(String pathFile) {
+        legs.add(pathFile);
+    }
+
+    /**
+     * Drives until there are no legs left
+     * @param speed double
+     * @throws Exception
+     */
+    public void run(double speed) throws Exception {
+        boolean finished = false;
+        try {
+            Future<Leg> next = prefetch();
+            while (next != null) {
+                Leg leg = next.get();
+                next = prefetch();
+                Checkpoint checkpoint = robot.getPendingCheckpoint();
+                if (checkpoint != null && checkpoint.getLeg() == leg.getNumber()
+                        && checkpoint.getRouteHash() != leg.getRoute().getHash()) {
+                    throw new Exception("Leg " + leg.getNumber() + " (" + leg.getName()
+                            + ") is not on the route of the checkpoint");
+                }
+                if (checkpoint == null || checkpoint.getLeg() == leg.getNumber()) {
+                    robot.run(leg, speed, next == null);
+                    if (next != null && !isReady(next)) {
+                        //Waiting for the leg with the robot moving would leave it without control
+                        robot.stop();
+                    }
+                }
+                if (next == null) {
+                    //Legs may have been added during the last one
+                    next = prefetch();
+                }
+            }
+            if (robot.getPendingCheckpoint() != null) {
+                throw new Exception("The mission has no leg " + robot.getPendingCheckpoint().getLeg()
+                        + " to resume");
+            }
+            robot.discardCheckpoint();
+            finished = true;
+        } finally {
+            loader.shutdown();
+            if (!finished) {
+                try {
+                    robot.stop();
+                } catch (Exception e) {
+                    System.err.println("Stopping the robot failed: " + e);
+                }
+            }
+            robot.flush();
+        }
+    }
+
+    /**
+     * Checks whether a leg has been prepared successfully, without waiting for it
+     * @param leg Future or null
+     * @return boolean
+     */
+    private static boolean isReady(Future<Leg> leg) {
+        if (leg == null || !leg.isDone()) {
+            return false;
+        }
+        try {
+            leg.get();
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Starts preparing the next leg in the queue
+     * @return the leg to come, or null if the queue is empty
+     */
+    private Future<Leg> prefetch() {
+        final String pathFile = legs.poll();
+        if (pathFile == null) {
+            return null;
+        }
+        final int number = nextNumber++;
+        return loader.submit(new Callable<Leg>() {
+            public Leg call() throws Exception {
+                return robot.prepare(number, pathFile, Main.readPath(pathFile));
+            }
+        });
+    }
+}
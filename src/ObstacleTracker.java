@@ -0,0 +1,279 @@
+/**
+ * Follows obstacles that move. Each laser scan is split into segments wherever
+ * the range jumps between neighbouring beams. Segments narrower than a person
+ * or two are matched to the tracks of the previous scan, closest pairs first.
+ * Each track then estimates its velocity with an alpha-beta (constant velocity)
+ * filter. Walls are not tracked; they are left to the scan-based stages.
+ *
+ * All state lives in preallocated arrays, so an update allocates nothing.
+ * Positions are in world coordinates, times in milliseconds, speeds in m/s.
+ */
+public class ObstacleTracker
+{
+    public static final int MAX_SEGMENTS = 64;
+    public static final int MAX_TRACKS = 32;
+
+    private static final double JUMP = 0.3;
+    private static final double JUMP_PER_METER = 0.05;
+    private static final double MAX_WIDTH = 1.0;
+    private static final double GATE = 0.5;
+    private static final double ALPHA = 0.5;
+    private static final double BETA = 0.2;
+    private static final int CONFIRM_HITS = 3;
+    private static final int MAX_MISSES = 3;
+    private static final double MOVING_SPEED = 0.3;
+    private static final double MAX_SPEED = 3.0;
+
+    private int segments;
+    private final double[] segmentX = new double[MAX_SEGMENTS];
+    private final double[] segmentY = new double[MAX_SEGMENTS];
+    private final double[] segmentRadius = new double[MAX_SEGMENTS];
+    private final boolean[] segmentUsed = new boolean[MAX_SEGMENTS];
+
+    private int tracks;
+    private final double[] x = new double[MAX_TRACKS];
+    private final double[] y = new double[MAX_TRACKS];
+    private final double[] vx = new double[MAX_TRACKS];
+    private final double[] vy = new double[MAX_TRACKS];
+    private final double[] radius = new double[MAX_TRACKS];
+    private final int[] hits = new int[MAX_TRACKS];
+    private final int[] misses = new int[MAX_TRACKS];
+    private final boolean[] trackUsed = new boolean[MAX_TRACKS];
+    private long time;
+    private boolean started;
+
+    /**
+     * Processes a scan taken from the given pose
+     * @param time when the scan was taken
+     * @param poseX double
+     * @param poseY double
+     * @param heading radians
+     * @param echoes double[]
+     */
+    public void update(long time, double poseX, double poseY, double heading, double[] echoes) {
+        segment(poseX, poseY, heading, echoes);
+        double dt = started ? (time - this.time) / 1000.0 : 0;
+        if (started && dt <= 0) {
+            return;
+        }
+        this.time = time;
+        this.started = true;
+        for (int t = 0; t < tracks; t++) {
+            x[t] += vx[t] * dt;
+            y[t] += vy[t] * dt;
+            trackUsed[t] = false;
+        }
+        associate(dt);
+        for (int t = tracks - 1; t >= 0; t--) {
+            if (!trackUsed[t] && ++misses[t] > MAX_MISSES) {
+                remove(t);
+            }
+        }
+        for (int s = 0; s < segments && tracks < MAX_TRACKS; s++) {
+            if (!segmentUsed[s]) {
+                int t = tracks++;
+                x[t] = segmentX[s];
+                y[t] = segmentY[s];
+                vx[t] = 0;
+                vy[t] = 0;
+                radius[t] = segmentRadius[s];
+                hits[t] = 1;
+                misses[t] = 0;
+            }
+        }
+    }
+
+    /**
+     * Splits a scan into segments of neighbouring beams with similar range, and
+     * keeps those that are narrow enough to be something else than a wall
+     */
+    private void segment(double poseX, double poseY, double heading, double[] echoes) {
+        segments = 0;
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        int beams = LaserGeometry.usableBeams(echoes);
+        int first = -1;
+        for (int i = 0; i <= beams; i++) {
+            boolean hit = i < beams && LaserGeometry.isHit(echoes[i]);
+            boolean joined = hit && first >= 0
+                    && Math.abs(echoes[i] - echoes[i - 1]) < JUMP + JUMP_PER_METER * echoes[i];
+            if (first >= 0 && !joined) {
+                addSegment(first, i - 1, poseX, poseY, cos, sin, echoes);
+                first = -1;
+            }
+            if (hit && first < 0) {
+                first = i;
+            }
+        }
+    }
+
+    private void addSegment(int first, int last, double poseX, double poseY, double cos, double sin,
+                            double[] echoes) {
+        if (segments == MAX_SEGMENTS) {
+            return;
+        }
+        double ax = echoes[first] * LaserGeometry.cos(first);
+        double ay = echoes[first] * LaserGeometry.sin(first);
+        double bx = echoes[last] * LaserGeometry.cos(last);
+        double by = echoes[last] * LaserGeometry.sin(last);
+        double width = Math.sqrt((bx - ax) * (bx - ax) + (by - ay) * (by - ay));
+        if (width > MAX_WIDTH) {
+            return;
+        }
+        //The laser sees the near side, so the center lies half a width further away
+        double cx = (ax + bx) / 2;
+        double cy = (ay + by) / 2;
+        double range = Math.sqrt(cx * cx + cy * cy);
+        double half = width / 2;
+        if (range > 0) {
+            cx += cx / range * half;
+            cy += cy / range * half;
+        }
+        segmentX[segments] = poseX + cx * cos - cy * sin;
+        segmentY[segments] = poseY + cx * sin + cy * cos;
+        segmentRadius[segments] = half;
+        segmentUsed[segments] = false;
+        segments++;
+    }
+
+    /**
+     * Matches segments to predicted tracks, the closest pair within the gate first,
+     * and corrects the matched tracks
+     * @param dt seconds since the previous scan
+     */
+    private void associate(double dt) {
+        double gate = GATE + MAX_SPEED * dt;
+        double gate2 = gate * gate;
+        while (true) {
+            int bestTrack = -1;
+            int bestSegment = -1;
+            double best = gate2;
+            for (int t = 0; t < tracks; t++) {
+                if (trackUsed[t]) {
+                    continue;
+                }
+                for (int s = 0; s < segments; s++) {
+                    if (segmentUsed[s]) {
+                        continue;
+                    }
+                    double dx = segmentX[s] - x[t];
+                    double dy = segmentY[s] - y[t];
+                    double d2 = dx * dx + dy * dy;
+                    if (d2 < best) {
+                        best = d2;
+                        bestTrack = t;
+                        bestSegment = s;
+                    }
+                }
+            }
+            if (bestTrack < 0) {
+                return;
+            }
+            correct(bestTrack, bestSegment, dt);
+        }
+    }
+
+    private void correct(int t, int s, double dt) {
+        double rx = segmentX[s] - x[t];
+        double ry = segmentY[s] - y[t];
+        x[t] += ALPHA * rx;
+        y[t] += ALPHA * ry;
+        if (dt > 0) {
+            vx[t] += BETA / dt * rx;
+            vy[t] += BETA / dt * ry;
+            double speed = Math.sqrt(vx[t] * vx[t] + vy[t] * vy[t]);
+            if (speed > MAX_SPEED) {
+                vx[t] *= MAX_SPEED / speed;
+                vy[t] *= MAX_SPEED / speed;
+            }
+        }
+        radius[t] = Math.max(radius[t], segmentRadius[s]);
+        hits[t]++;
+        misses[t] = 0;
+        trackUsed[t] = true;
+        segmentUsed[s] = true;
+    }
+
+    private void remove(int t) {
+        int last = --tracks;
+        x[t] = x[last];
+        y[t] = y[last];
+        vx[t] = vx[last];
+        vy[t] = vy[last];
+        radius[t] = radius[last];
+        hits[t] = hits[last];
+        misses[t] = misses[last];
+        trackUsed[t] = trackUsed[last];
+    }
+
+    /**
+     * Forgets all tracks
+     */
+    public void clear() {
+        tracks = 0;
+        segments = 0;
+        started = false;
+    }
+
+    public int getTrackCount() {
+        return tracks;
+    }
+
+    /**
+     * Checks whether a track has been seen often enough to be trusted
+     * @param track int
+     * @return boolean
+     */
+    public boolean isConfirmed(int track) {
+        return hits[track] >= CONFIRM_HITS;
+    }
+
+    /**
+     * Checks whether a confirmed track moves faster than measurement noise explains
+     * @param track int
+     * @return boolean
+     */
+    public boolean isMoving(int track) {
+        return isConfirmed(track) && vx[track] * vx[track] + vy[track] * vy[track] > MOVING_SPEED * MOVING_SPEED;
+    }
+
+    /**
+     * Predicted X of a track at the given time
+     * @param track int
+     * @param time long
+     * @return double
+     */
+    public double predictX(int track, long time) {
+        return x[track] + vx[track] * (time - this.time) / 1000.0;
+    }
+
+    /**
+     * Predicted Y of a track at the given time
+     * @param track int
+     * @param time long
+     * @return double
+     */
+    public double predictY(int track, long time) {
+        return y[track] + vy[track] * (time - this.time) / 1000.0;
+    }
+
+    public double getVelocityX(int track) {
+        return vx[track];
+    }
+
+    public double getVelocityY(int track) {
+        return vy[track];
+    }
+
+    public double getRadius(int track) {
+        return radius[track];
+    }
+
+    /**
+     * Number of segments found in the last scan
+     * @return int
+     */
+    public int getSegmentCount() {
+        return segments;
+    }
+}
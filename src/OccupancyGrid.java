@@ -0,0 +1,168 @@
+/**
+ * A fixed-size grid over the area of a path where each cell records whether the
+ * laser has seen an obstacle in it. Cells are stored row by row in a single
+ * array, so a cell can be referred to either by (column, row) or by index.
+ */
+public class OccupancyGrid
+{
+    private static final double CLEAR_RANGE = 5;
+
+    private final double originX;
+    private final double originY;
+    private final double resolution;
+    private final int width;
+    private final int height;
+    private final boolean[] occupied;
+
+    /**
+     * Create an empty grid covering the given rectangle
+     * @param minX double
+     * @param minY double
+     * @param maxX double
+     * @param maxY double
+     * @param resolution side of a cell in meters
+     */
+    public OccupancyGrid(double minX, double minY, double maxX, double maxY, double resolution) {
+        this.originX = minX;
+        this.originY = minY;
+        this.resolution = resolution;
+        this.width = (int) Math.ceil((maxX - minX) / resolution) + 1;
+        this.height = (int) Math.ceil((maxY - minY) / resolution) + 1;
+        this.occupied = new boolean[width * height];
+    }
+
+    private OccupancyGrid(OccupancyGrid other) {
+        this.originX = other.originX;
+        this.originY = other.originY;
+        this.resolution = other.resolution;
+        this.width = other.width;
+        this.height = other.height;
+        this.occupied = other.occupied.clone();
+    }
+
+    /**
+     * Create an empty grid covering a path and the given margin around it
+     * @param path Position[]
+     * @param margin double
+     * @param resolution double
+     * @return OccupancyGrid
+     */
+    public static OccupancyGrid around(Position[] path, double margin, double resolution) {
+        double minX = path[0].getX();
+        double maxX = minX;
+        double minY = path[0].getY();
+        double maxY = minY;
+        for (Position p : path) {
+            minX = Math.min(minX, p.getX());
+            maxX = Math.max(maxX, p.getX());
+            minY = Math.min(minY, p.getY());
+            maxY = Math.max(maxY, p.getY());
+        }
+        return new OccupancyGrid(minX - margin, minY - margin, maxX + margin, maxY + margin, resolution);
+    }
+
+    /**
+     * Copy of the grid that can be handed to another thread
+     * @return OccupancyGrid
+     */
+    public OccupancyGrid snapshot() {
+        return new OccupancyGrid(this);
+    }
+
+    /**
+     * Records a laser scan taken at the given pose. Cells along each beam are
+     * cleared and the cell the beam ended in is marked as occupied.
+     * @param x double
+     * @param y double
+     * @param heading radians
+     * @param echoes double[]
+     */
+    public void markEchoes(double x, double y, double heading, double[] echoes) {
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        int beams = LaserGeometry.usableBeams(echoes);
+        for (int i = 0; i < beams; i++) {
+            double dx = cos * LaserGeometry.cos(i) - sin * LaserGeometry.sin(i);
+            double dy = sin * LaserGeometry.cos(i) + cos * LaserGeometry.sin(i);
+            double range = echoes[i];
+            double clear = Math.min(range, CLEAR_RANGE) - resolution;
+            for (double r = 0; r < clear; r += resolution) {
+                set(x + dx * r, y + dy * r, false);
+            }
+            if (LaserGeometry.isHit(range)) {
+                set(x + dx * range, y + dy * range, true);
+            }
+        }
+    }
+
+    private void set(double x, double y, boolean value) {
+        int cx = toColumn(x);
+        int cy = toRow(y);
+        if (contains(cx, cy)) {
+            occupied[index(cx, cy)] = value;
+        }
+    }
+
+    /**
+     * Checks that no occupied cell lies within the given radius of a point
+     * @param position Position
+     * @param radius double
+     * @return boolean
+     */
+    public boolean isClear(Position position, double radius) {
+        int cx = toColumn(position.getX());
+        int cy = toRow(position.getY());
+        int cells = (int) Math.ceil(radius / resolution);
+        for (int row = cy - cells; row <= cy + cells; row++) {
+            for (int column = cx - cells; column <= cx + cells; column++) {
+                if (contains(column, row) && occupied[index(column, row)]
+                        && (column - cx) * (column - cx) + (row - cy) * (row - cy) <= cells * cells) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean isOccupied(int index) {
+        return occupied[index];
+    }
+
+    public boolean contains(int column, int row) {
+        return column >= 0 && row >= 0 && column < width && row < height;
+    }
+
+    public int index(int column, int row) {
+        return row * width + column;
+    }
+
+    public int toColumn(double x) {
+        return (int) Math.floor((x - originX) / resolution);
+    }
+
+    public int toRow(double y) {
+        return (int) Math.floor((y - originY) / resolution);
+    }
+
+    /**
+     * Center of a cell in world coordinates
+     * @param index int
+     * @return Position
+     */
+    public Position toPosition(int index) {
+        return new Position(originX + (index % width + 0.5) * resolution,
+                originY + (index / width + 0.5) * resolution);
+    }
+
+    public double getResolution() {
+        return resolution;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs GridPlanner on a background thread so that the control loop keeps
+ * running while a detour is being planned. Only one plan is worked on at a time.
+ * One replanner serves all legs; its thread ends when it has been idle for a while.
+ */
+public class PathReplanner
+{
+    private static final Position[] NO_PATH = new Position[0];
+
+    private final GridPlanner planner;
+    private final ThreadPoolExecutor executor;
+    private Future<Position[]> pending;
+
+    /**
+     * Create a replanner keeping detours the given distance from obstacles
+     * @param clearance double
+     */
+    public PathReplanner(double clearance) {
+        planner = new GridPlanner(clearance);
+        executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                Threads.daemon("path-replanner"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Checks whether a plan has been requested and not yet collected
+     * @return boolean
+     */
+    public boolean isPlanning() {
+        return pending != null;
+    }
+
+    /**
+     * Starts planning from start to goal unless a plan is already in progress
+     * @param grid a snapshot that is not modified while planning
+     * @param start Position
+     * @param goal Position
+     * @return true if planning was started
+     */
+    public boolean request(final OccupancyGrid grid, final Position start, final Position goal) {
+        if (pending != null) {
+            return false;
+        }
+        pending = executor.submit(new Callable<Position[]>() {
+            public Position[] call() {
+                return planner.plan(grid, start, goal);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Collects the result of the plan in progress without waiting for it
+     * @return null while planning or if nothing was requested, an empty array
+     * if no path was found, otherwise the planned path
+     * @throws Exception
+     */
+    public Position[] poll() throws Exception {
+        if (pending == null || !pending.isDone()) {
+            return null;
+        }
+        try {
+            Position[] path = pending.get();
+            return path == null || path.length == 0 ? NO_PATH : path;
+        } catch (ExecutionException e) {
+            throw new Exception("Replanning failed", e.getCause());
+        } finally {
+            pending = null;
+        }
+    }
+
+    /**
+     * Drops the plan in progress, if any, e.g. because a new leg starts
+     */
+    public void cancel() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+}
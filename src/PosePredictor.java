@@ -0,0 +1,215 @@
+/**
+ * Predicts where the robot is now from the last measured pose and the drive
+ * commands issued since, using a differential-drive motion model.
+ * Robot timestamps are converted to local time with an offset estimated from
+ * the responses themselves: each response is taken to have been stamped half
+ * way through its round trip, and the offset is the smallest such estimate
+ * among the last CLOCK_WINDOW responses. Taking the smallest discards responses
+ * that were delayed on the way; keeping only recent ones follows a robot clock
+ * that drifts against the local one.
+ * All times are in milliseconds, angles in radians.
+ */
+public class PosePredictor
+{
+    private static final int HISTORY = 64;
+    private static final long MAX_HORIZON = 1000;
+    private static final int CLOCK_WINDOW = 32;
+
+    private final long[] commandTimes = new long[HISTORY];
+    private final double[] linearSpeeds = new double[HISTORY];
+    private final double[] angularSpeeds = new double[HISTORY];
+    private int commands;
+
+    private final long[] offsets = new long[CLOCK_WINDOW];
+    private int observations;
+    private long clockOffset;
+
+    private boolean measured;
+    private long measuredStamp;
+    private long measuredTime;
+    private double measuredX;
+    private double measuredY;
+    private double measuredHeading;
+
+    private double x;
+    private double y;
+    private double heading;
+
+    private double maxDrift;
+    private double driftSum;
+    private long driftCount;
+    private long lastPoseAge;
+
+    /**
+     * Records a drive command at the time it was sent
+     * @param time long
+     * @param linearSpeed double
+     * @param angularSpeed double
+     */
+    public void command(long time, double linearSpeed, double angularSpeed) {
+        int slot = commands % HISTORY;
+        commandTimes[slot] = time;
+        linearSpeeds[slot] = linearSpeed;
+        angularSpeeds[slot] = angularSpeed;
+        commands++;
+    }
+
+    /**
+     * Updates the clock offset with a response that was requested and received
+     * at the given local times
+     * @param robotTimestamp long
+     * @param sentAt long
+     * @param receivedAt long
+     */
+    public void observeClock(long robotTimestamp, long sentAt, long receivedAt) {
+        offsets[observations % CLOCK_WINDOW] = receivedAt - (receivedAt - sentAt) / 2 - robotTimestamp;
+        observations++;
+        long offset = Long.MAX_VALUE;
+        for (int i = Math.min(observations, CLOCK_WINDOW) - 1; i >= 0; i--) {
+            offset = Math.min(offset, offsets[i]);
+        }
+        clockOffset = offset;
+    }
+
+    /**
+     * Converts a robot timestamp to local time
+     * @param robotTimestamp long
+     * @return long
+     */
+    public long toLocalTime(long robotTimestamp) {
+        return robotTimestamp + clockOffset;
+    }
+
+    /**
+     * Records a measured pose. Before it replaces the previous one, the pose that
+     * was predicted for the same instant is compared to it to track the drift.
+     * A frame repeating the robot timestamp of the last one is the same pose
+     * again; it only updates the age, and does not count as a clock observation.
+     * @param x double
+     * @param y double
+     * @param heading double
+     * @param robotTimestamp long
+     * @param sentAt when the pose was requested
+     * @param receivedAt when the pose arrived
+     */
+    public void measure(double x, double y, double heading, long robotTimestamp, long sentAt, long receivedAt) {
+        if (measured && robotTimestamp == measuredStamp) {
+            lastPoseAge = receivedAt - toLocalTime(robotTimestamp);
+            return;
+        }
+        observeClock(robotTimestamp, sentAt, receivedAt);
+        long time = toLocalTime(robotTimestamp);
+        lastPoseAge = receivedAt - time;
+        if (measured) {
+            predict(time);
+            double drift = Math.sqrt((this.x - x) * (this.x - x) + (this.y - y) * (this.y - y));
+            maxDrift = Math.max(maxDrift, drift);
+            driftSum += drift;
+            driftCount++;
+        }
+        measured = true;
+        measuredStamp = robotTimestamp;
+        measuredTime = time;
+        measuredX = x;
+        measuredY = y;
+        measuredHeading = heading;
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+
+    /**
+     * Integrates the commands issued since the last measurement up to the given time.
+     * The result is read with getX, getY and getHeading.
+     * @param time long
+     */
+    public void predict(long time) {
+        x = measuredX;
+        y = measuredY;
+        heading = measuredHeading;
+        long end = Math.min(time, measuredTime + MAX_HORIZON);
+        if (end <= measuredTime || commands == 0) {
+            return;
+        }
+        //Find the command that was in effect when the pose was measured
+        int first = Math.max(0, commands - HISTORY);
+        int k = commands - 1;
+        while (k > first && commandTimes[k % HISTORY] > measuredTime) {
+            k--;
+        }
+        long t = measuredTime;
+        for (; k < commands && t < end; k++) {
+            int slot = k % HISTORY;
+            long from = Math.max(t, commandTimes[slot]);
+            long to = k + 1 < commands ? Math.min(commandTimes[(k + 1) % HISTORY], end) : end;
+            if (to > from) {
+                integrate(linearSpeeds[slot], angularSpeeds[slot], (to - from) / 1000.0);
+                t = to;
+            }
+        }
+    }
+
+    /**
+     * Moves the predicted pose along the arc given by constant speeds
+     * @param v linear speed
+     * @param w angular speed
+     * @param dt seconds
+     */
+    private void integrate(double v, double w, double dt) {
+        if (Math.abs(w) < 1e-6) {
+            x += v * dt * Math.cos(heading);
+            y += v * dt * Math.sin(heading);
+        } else {
+            double turned = heading + w * dt;
+            x += v / w * (Math.sin(turned) - Math.sin(heading));
+            y -= v / w * (Math.cos(turned) - Math.cos(heading));
+            heading = turned;
+        }
+    }
+
+    public boolean hasPose() {
+        return measured;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * Starts tracking the drift anew, as at the start of a leg
+     */
+    public void clearDrift() {
+        maxDrift = 0;
+        driftSum = 0;
+        driftCount = 0;
+    }
+
+    /**
+     * Largest distance between a measured position and the position that was
+     * predicted for it since the drift was cleared
+     * @return meters
+     */
+    public double getMaxDrift() {
+        return maxDrift;
+    }
+
+    public double getMeanDrift() {
+        return driftCount == 0 ? 0 : driftSum / driftCount;
+    }
+
+    /**
+     * How old the last measured pose was when it arrived
+     * @return milliseconds
+     */
+    public long getLastPoseAge() {
+        return lastPoseAge;
+    }
+}
@@ -3,6 +3,7 @@ import java.util.Map;
 public interface Response
 {
    void setData(Map<String, Object> data);
+   Map<String, Object> getData();
    String getPath();
    long getTimestamp();
 }
@@ -0,0 +1,20 @@
+/**
+ * Reads the values of the data Lokarria sends with a response.
+ */
+public final class ResponseValues
+{
+    private ResponseValues() {
+    }
+
+    /**
+     * Lokarria has sent some values both as numbers and as strings
+     * @param value Object
+     * @return the value, or NaN if it is missing
+     */
+    public static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value == null ? Double.NaN : Double.parseDouble(value.toString());
+    }
+}
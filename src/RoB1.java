@@ -1,29 +1,67 @@
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.Map;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * RoBi interfaces to the (real or virtual) robot over a network connection.
- * It uses Java -> JSON -> HttpRequest -> Network -> DssHost32 -> Lokarria(Robulab) -> Core -> MRDS4
+ * RoBi interfaces to the (real or virtual) robot over a RobotLink, normally
+ * a network connection to Lokarria.
  *
  * @author thomasj
  */
 public class RoB1
 {
-    private String host;
-    private int port;
-    private ObjectMapper mapper = new ObjectMapper();
-    private double lookAheadDistance = 0.4;
-    private int positionsToSkip = 5;
-    private double headingMargin = 5;
+    private RobotLink link;
+    private TuningProfile profile;
+    private double lookAheadDistance;
+    private int positionsToSkip;
     private double linearSpeed;
-    private double angularSpeed = 2;
     private LocalizationResponse lr = new LocalizationResponse();
     private DifferentialDriveRequest dr = new DifferentialDriveRequest();
     private LaserEchoesResponse ler = new LaserEchoesResponse();
+    private long echoesSentAt;
+    private long echoesReceivedAt;
+    private OccupancyGrid grid;
+    private final PathReplanner replanner;
+    private final double detourClearance;
+    private int rejoinIndex;
+    private int detourEnd;
+    private int detourRejoin;
+    private boolean onDetour;
+    private Position progressFrom;
+    private long lastProgress;
+    private PosePredictor predictor = new PosePredictor();
+    private SpeedGovernor governor;
+    private double sentAngularSpeed;
+    private boolean linkFailed;
+    private ObstacleTracker tracker = new ObstacleTracker();
+    private FrameKey mappedFrame = new FrameKey();
+    private FrameKey scannedFrame = new FrameKey();
+    private FrameKey sectorsFrame = new FrameKey();
+    private double leftObstacle;
+    private double rightObstacle;
+    private File speedMapDirectory;
+    private Route route;
+    private SpeedMap speedMap;
+    private final Map<Long, SpeedMap> speedMaps = new HashMap<Long, SpeedMap>();
+    private int routeSegment;
+    private int speedBin;
+    private double trackingError;
+    private FrameKey clearanceFrame = new FrameKey();
+    private double clearance;
+    private double arcLength;
+    private TrackingAnalytics analytics;
+    private File reportDirectory;
+    private File checkpointDirectory;
+    private Checkpoint pendingCheckpoint;
+    private long lastCheckpoint;
+    private int legNumber;
+    private SlowSensorPoller slowSensors;
+    private final ThreadPoolExecutor recorder;
+    private boolean recordFailing;
 
    /**
     * Create a robot connected to host "host" at port "port"
@@ -31,70 +69,608 @@ public class RoB1
     * @param port normally 50000
     */
    public RoB1(String host, int port) {
-       this.host = host;
-       this.port = port;
+       this(new HttpRobotLink(host, port), TuningProfile.DEFAULT);
    }
 
+   /**
+    * Create a robot driven over the given link with the given tuning
+    * @param link RobotLink
+    * @param profile TuningProfile
+    */
+   public RoB1(RobotLink link, TuningProfile profile) {
+       this.link = link;
+       this.profile = profile;
+       this.governor = new SpeedGovernor(profile.getCollisionHorizon(), profile.getRobotRadius(),
+               profile.getSideClearance(), profile.getStopDistance());
+       //Detours keep the distances the governor keeps, and a cell more for the obstacles the grid rounds off
+       this.detourClearance = profile.getRobotRadius() + profile.getSideClearance() + profile.getStopDistance()
+               + profile.getGridResolution();
+       this.replanner = new PathReplanner(detourClearance);
+       //Files are written on a thread of their own, in order, so the control loop never waits for the disk
+       this.recorder = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+               Threads.daemon("leg-recorder"));
+       this.recorder.allowCoreThreadTimeOut(true);
+   }
+
+    /**
+     * Keeps a speed map per route in the given directory, so that what is learned
+     * on one run is used on the next. Without a directory every run starts afresh.
+     * @param directory File
+     */
+    public void setSpeedMapDirectory(File directory) {
+        this.speedMapDirectory = directory;
+    }
+
+    /**
+     * Writes a tracking report of every finished leg to the given directory
+     * @param directory File
+     */
+    public void setReportDirectory(File directory) {
+        this.reportDirectory = directory;
+    }
+
+    /**
+     * Limits the speed by the tilt and charge read by the given poller
+     * @param poller SlowSensorPoller
+     */
+    public void setSlowSensors(SlowSensorPoller poller) {
+        this.slowSensors = poller;
+    }
+
+    /**
+     * Writes a checkpoint to the given directory while driving, so that an
+     * interrupted run can be resumed
+     * @param directory File
+     */
+    public void setCheckpointDirectory(File directory) {
+        this.checkpointDirectory = directory;
+    }
+
+    /**
+     * Reads the checkpoint left by an interrupted run. The leg with the number
+     * of the checkpoint continues from it instead of from the start, if it is
+     * on the same route.
+     * @return the checkpoint, or null if the last run was finished
+     * @throws Exception
+     */
+    public Checkpoint resume() throws Exception {
+        pendingCheckpoint = checkpointDirectory != null ? Checkpoint.read(checkpointDirectory) : null;
+        return pendingCheckpoint;
+    }
+
+    /**
+     * The checkpoint read by resume, until the leg it belongs to has been started
+     * @return Checkpoint or null
+     */
+    public Checkpoint getPendingCheckpoint() {
+        return pendingCheckpoint;
+    }
+
+    /**
+     * Removes the checkpoint once the whole mission has been driven
+     */
+    public void discardCheckpoint() {
+        if(checkpointDirectory == null){
+            return;
+        }
+        record(new Record() {
+            public void write() throws Exception {
+                Checkpoint.delete(checkpointDirectory);
+            }
+        });
+    }
+
+    /**
+     * Prepares a path for driving. Does not talk to the robot, so it can be
+     * called from another thread while the robot drives.
+     * @param number number of the leg within its mission, counted from 0
+     * @param name String
+     * @param path Position[]
+     * @return Leg
+     * @throws Exception
+     */
+    public Leg prepare( int number, String name, Position[] path ) throws Exception {
+        Route route = new Route(path);
+        SpeedMap speedMap;
+        //Legs of the same route share one map, so a leg learns from the one before even if it was prepared earlier
+        synchronized (speedMaps) {
+            speedMap = speedMaps.get(route.getHash());
+            if(speedMap == null){
+                speedMap = speedMapDirectory != null
+                        ? SpeedMap.load(speedMapDirectory, route, profile.getSpeedMapBinLength())
+                        : new SpeedMap(route, profile.getSpeedMapBinLength());
+                speedMaps.put(route.getHash(), speedMap);
+            }
+        }
+        return new Leg(number, name, path, route, speedMap,
+                OccupancyGrid.around(path, profile.getGridMargin(), profile.getGridResolution()));
+    }
+
     /**
      * Runs the robot along the given path.
      * @param path Position[]
      */
     public void run( Position[] path, double speed ) throws Exception {
+        try {
+            run(prepare(0, "path", path), speed, true);
+            discardCheckpoint();
+        } finally {
+            flush();
+        }
+    }
+
+    /**
+     * Runs the robot along a prepared leg.
+     * @param leg Leg
+     * @param speed double
+     * @param stop whether to stop at the end; if not, the robot keeps going
+     *             until the next leg takes over. The robot is always stopped
+     *             if the leg fails.
+     * @throws Exception
+     */
+    public void run( Leg leg, double speed, boolean stop ) throws Exception {
+        Position[] path = leg.getPath();
         linearSpeed = speed;
-        long start = System.currentTimeMillis();
+        lookAheadDistance = profile.getLookAheadDistance();
+        positionsToSkip = profile.getPositionsToSkip();
+        long start = link.currentTimeMillis();
+        grid = leg.getGrid();
+        mappedFrame.invalidate();
+        scannedFrame.invalidate();
+        sectorsFrame.invalidate();
+        clearanceFrame.invalidate();
+        tracker.clear();
+        route = leg.getRoute();
+        legNumber = leg.getNumber();
+        routeSegment = 0;
+        speedMap = leg.getSpeedMap();
+        speedMap.startLap();
+        analytics = new TrackingAnalytics(route, speed, start);
+        predictor.clearDrift();
+        int first = 0;
+        if(pendingCheckpoint != null && pendingCheckpoint.getLeg() == leg.getNumber()
+                && pendingCheckpoint.getRouteHash() == route.getHash()){
+            first = resumeIndex(pendingCheckpoint);
+            pendingCheckpoint = null;
+        }
+        boolean finished = false;
+        linkFailed = false;
+        try {
+            drivePath(path, first);
+            finished = true;
+        } finally {
+            replanner.cancel();
+            if(!finished){
+                halt();
+            }
+        }
+        analytics.finish(link.currentTimeMillis());
+        analytics.setPoseDrift(predictor.getMeanDrift(), predictor.getMaxDrift());
+        speedMap.finishLap(profile.getSpeedMapClearance(), profile.getSpeedMapTrackingError(),
+                profile.getSpeedMapStep(), profile.getSpeedMapMaxCeiling());
+        recordLeg(leg.getName());
+
+        //Stop
+        if(stop){
+            stop();
+        }
+    }
+
+    /**
+     * Stops the robot
+     * @throws Exception
+     */
+    public void stop() throws Exception {
+        dr.setAngularSpeed(0);
+        dr.setLinearSpeed(0);
+        drive();
+    }
+
+    /**
+     * Stops the robot after a failure, without hiding the failure if stopping fails too.
+     * If the failure came from the link, stopping is still tried, but it failing
+     * the same way is not reported again.
+     */
+    private void halt() {
+        boolean failedBefore = linkFailed;
+        try {
+            stop();
+        } catch (Exception e) {
+            if(!failedBefore){
+                System.err.println("Stopping the robot failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Waits until everything handed to the recorder has been written
+     * @throws Exception
+     */
+    public void flush() throws Exception {
+        recorder.submit(new Runnable() {
+            public void run() {
+            }
+        }).get();
+    }
+
+    /**
+     * Hands the speed map and the report of a finished leg to the recorder. The
+     * checkpoint is kept until the mission is finished, so that a crash before
+     * the next leg writes its own resumes at the end of this one.
+     * @param name name of the leg
+     */
+    private void recordLeg( final String name ) {
+        final SpeedMap map = speedMapDirectory != null ? speedMap.copy() : null;
+        final TrackingAnalytics lap = analytics;
+        record(new Record() {
+            public void write() throws Exception {
+                if(map != null){
+                    map.save(speedMapDirectory);
+                }
+                if(reportDirectory != null){
+                    writeReport(name, lap);
+                }
+            }
+        });
+    }
+
+    /**
+     * Something to write on the recorder thread
+     */
+    private interface Record
+    {
+        void write() throws Exception;
+    }
+
+    private void record( final Record record ) {
+        recorder.execute(new Runnable() {
+            public void run() {
+                try {
+                    record.write();
+                    recordFailing = false;
+                } catch (Exception e) {
+                    //Report only when writing starts failing, not on every checkpoint
+                    if(!recordFailing){
+                        System.err.println("Writing to disk failed: " + e);
+                        recordFailing = true;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the tracking report of a leg and prints its lap time
+     * @param name name of the leg
+     * @param analytics TrackingAnalytics of the leg
+     * @throws Exception
+     */
+    private void writeReport( String name, TrackingAnalytics analytics ) throws Exception {
+        reportDirectory.mkdirs();
+        File file = new File(reportDirectory,
+                new File(name).getName() + "-" + System.currentTimeMillis() + ".txt");
+        PrintStream out = new PrintStream(file);
+        try {
+            analytics.report(out);
+        } finally {
+            out.close();
+        }
+        System.out.printf("%s: lap %.2f s, stopped %.2f s, report in %s%n", name,
+                analytics.getLapTime() / 1000.0, analytics.getStoppedTime() / 1000.0, file);
+    }
+
+    /**
+     * Gives access to the tracking analytics of the current or last leg
+     * @return TrackingAnalytics
+     */
+    public TrackingAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    /**
+     * Restores the look-ahead state of a checkpoint and finds where on the route
+     * the robot is now, searching onwards from where the checkpoint was written
+     * @param checkpoint Checkpoint
+     * @return index of the path position to continue from, the end of the
+     * nearest segment so that the robot does not turn back to its start
+     * @throws Exception
+     */
+    private int resumeIndex( Checkpoint checkpoint ) throws Exception {
+        lookAheadDistance = checkpoint.getLookAheadDistance();
+        positionsToSkip = checkpoint.getPositionsToSkip();
+        getResponse(lr);
+        Position position = lr.getPosition();
+        routeSegment = route.nearestSegment(position.getX(), position.getY(), checkpoint.getSegment(),
+                Checkpoint.SEARCH_WINDOW);
+        return Math.min(routeSegment + 1, route.getPositions().length - 1);
+    }
+
+    /**
+     * Follows the path until the last position is reached
+     * @param path Position[]
+     * @param first index of the position to start from
+     * @throws Exception
+     */
+    private void drivePath( Position[] path, int first ) throws Exception {
         int laserPositionsToSkip;
-        int lastPosition = path.length-1;
+        updatePose();
+        //A checkpoint at once, so that there is no time in the leg a crash would lose
+        writeCheckpoint();
+        detourEnd = 0;
+        detourRejoin = 0;
+        progressFrom = null;
         //Move along path
-        for(int i = 0; i < path.length; i = i+positionsToSkip) {
-            while(Double.compare(getDistanceToPosition(path[i]), lookAheadDistance)>0 ){
-                getResponse(ler);
+        int i = first;
+        while(i < path.length) {
+            while(Double.compare(getDistanceToPosition(path[i]), lookAhead(i))>0 ){
+                fetchEchoes();
+                updatePose();
+                mapEchoes();
+                onDetour = i < detourEnd;
                 adjustAngularSpeed(path[i]);
                 adjustLinearSpeed(path[i]);
                 laserPositionsToSkip = (int)Math.round(20*lookAheadDistance+positionsToSkip) ;
                 if(laserPositionsToSkip+i < path.length){
                     scan(path[i+laserPositionsToSkip]);
                 }
+                Position[] replanned = replan(path, i);
+                if(replanned != null){
+                    path = replanned;
+                    i = 0;
+                }
+                saveCheckpoint();
             }
+            i = i < detourEnd ? i+1 : i+positionsToSkip;
         }
+        int lastPosition = path.length-1;
 
         //Get that last position
         while( Double.compare(getDistanceToPosition(path[lastPosition]), 0.2) < 0 ){
-            getResponse(ler);
+            fetchEchoes();
+            updatePose();
             adjustAngularSpeed(path[lastPosition]);
             adjustLinearSpeed(path[lastPosition]);
         }
+    }
 
-        //Stop and print time of lap
-        long elapsedTime = System.currentTimeMillis() - start;
-        dr.setAngularSpeed(0);
-        dr.setLinearSpeed(0);
+    /**
+     * Distance at which the robot moves on from the position. The positions of a
+     * detour are taken one by one, at the look ahead distance of the profile rather
+     * than the one adjusted along the route, as cutting their corners would take
+     * the robot back towards the obstacle.
+     * @param i index of the position
+     * @return double
+     */
+    private double lookAhead( int i ) {
+        return i < detourEnd ? profile.getLookAheadDistance() : lookAheadDistance;
+    }
+
+    /**
+     * Writes a checkpoint if the last one is older than Checkpoint.INTERVAL. The
+     * position is taken from the route rather than from the path being followed,
+     * which may be a detour.
+     * @throws Exception
+     */
+    private void saveCheckpoint() throws Exception {
+        if(link.currentTimeMillis() - lastCheckpoint >= Checkpoint.INTERVAL){
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Writes a checkpoint of where the robot is now on the current leg
+     */
+    private void writeCheckpoint() {
+        lastCheckpoint = link.currentTimeMillis();
+        if(checkpointDirectory == null){
+            return;
+        }
+        final Checkpoint checkpoint = new Checkpoint(legNumber, route.getHash(), routeSegment, arcLength,
+                lookAheadDistance, positionsToSkip);
+        record(new Record() {
+            public void write() throws Exception {
+                checkpoint.save(checkpointDirectory);
+            }
+        });
+    }
+
+    /**
+     * Gives access to the pose drift metrics of the controller
+     * @return PosePredictor
+     */
+    public PosePredictor getPosePredictor() {
+        return predictor;
+    }
+
+    /**
+     * Fetches the localization and hands the measured pose to the predictor
+     * @throws Exception
+     */
+    private void updatePose() throws Exception {
+        long sentAt = link.currentTimeMillis();
+        getResponse(lr);
+        Position position = lr.getPosition();
+        double e[] = lr.getOrientation();
+        predictor.measure(position.getX(), position.getY(), 2 * Math.atan2(e[3], e[0]),
+                lr.getTimestamp(), sentAt, link.currentTimeMillis());
+        routeSegment = route.nearestSegment(position.getX(), position.getY(), routeSegment, 100);
+        trackingError = route.crossTrackError(routeSegment, position.getX(), position.getY());
+        arcLength = route.arcLength(routeSegment, position.getX(), position.getY());
+        speedBin = speedMap.bin(arcLength);
+    }
+
+    /**
+     * Distance to the closest echo of the current laser frame
+     * @return double
+     */
+    private double getClearance() {
+        if(clearanceFrame.changed(ler.getTimestamp())){
+            clearance = LaserGeometry.MAX_RANGE;
+            for(double echo : ler.getEchoes()){
+                if(echo > 0 && echo < clearance){
+                    clearance = echo;
+                }
+            }
+        }
+        return clearance;
+    }
+
+    /**
+     * Fetches the laser scan, remembering when it was requested and received
+     * @throws Exception
+     */
+    private void fetchEchoes() throws Exception {
+        echoesSentAt = link.currentTimeMillis();
+        getResponse(ler);
+        echoesReceivedAt = link.currentTimeMillis();
+    }
+
+    /**
+     * Marks the current laser scan in the occupancy grid and hands it to the
+     * obstacle tracker, at the pose the robot had when the scan was taken
+     * @throws Exception
+     */
+    private void mapEchoes() throws Exception {
+        long scanned = ler.getTimestamp();
+        if(!mappedFrame.changed(scanned)){
+            return;
+        }
+        predictor.observeClock(scanned, echoesSentAt, echoesReceivedAt);
+        predictor.predict(predictor.toLocalTime(scanned));
+        grid.markEchoes(predictor.getX(), predictor.getY(), predictor.getHeading(), ler.getEchoes());
+        tracker.update(predictor.toLocalTime(scanned), predictor.getX(), predictor.getY(), predictor.getHeading(),
+                ler.getEchoes());
+    }
+
+    /**
+     * Gives access to the obstacles tracked from the laser scans, with their predicted positions
+     * @return ObstacleTracker
+     */
+    public ObstacleTracker getObstacleTracker() {
+        return tracker;
+    }
+
+    /**
+     * Sends the drive request and remembers it for the pose prediction
+     * @throws Exception
+     */
+    private void drive() throws Exception {
+        predictor.command(link.currentTimeMillis(), dr.getLinearSpeed(), dr.getAngularSpeed());
         putRequest(dr);
+        sentAngularSpeed = dr.getAngularSpeed();
+    }
+
+    /**
+     * Plans a detour around the obstacles seen so far when the robot has stopped
+     * making progress along the path. The detour is planned in the
+     * background and, once ready, spliced into the route where it rejoins it.
+     * Rejoin points are always positions of the route, never of an earlier
+     * detour, and no new detour is planned until the robot is back on the route.
+     * @param path the path being followed, the route or a detour followed by the rest of it
+     * @param i index of the next position
+     * @return the path starting with the detour, or null if the path is unchanged
+     * @throws Exception
+     */
+    private Position[] replan( Position[] path, int i ) throws Exception {
+        Position[] detour = replanner.poll();
+        if(detour != null){
+            progressFrom = null;
+            if(detour.length > 0){
+                Position[] positions = route.getPositions();
+                Position[] spliced = new Position[detour.length + positions.length - rejoinIndex];
+                System.arraycopy(detour, 0, spliced, 0, detour.length);
+                System.arraycopy(positions, rejoinIndex, spliced, detour.length, positions.length - rejoinIndex);
+                detourEnd = detour.length;
+                detourRejoin = rejoinIndex;
+                return spliced;
+            }
+        } else if(i >= detourEnd && !replanner.isPlanning() && isBlocked()){
+            Position current = getCurrentPosition();
+            rejoinIndex = findRejoinIndex(route.getPositions(), detourRejoin + i - detourEnd, current);
+            replanner.request(grid.snapshot(), current, route.getPositions()[rejoinIndex]);
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the robot has moved less than the progress distance for too long.
+     * The distance is measured from where it last made progress, not towards the
+     * next position, which a robot creeping past an obstacle keeps passing by.
+     * @return boolean
+     * @throws Exception
+     */
+    private boolean isBlocked() throws Exception {
+        Position current = getCurrentPosition();
+        long now = link.currentTimeMillis();
+        if(progressFrom == null || Double.compare(current.getDistanceTo(progressFrom), profile.getProgressDistance()) > 0){
+            progressFrom = current;
+            lastProgress = now;
+        }
+        return now - lastProgress > profile.getBlockedTimeout();
     }
 
     /**
-     * Adjusts robots linear-speed after angle of next turn
+     * Finds the first position after i that is far enough away and free of obstacles
+     * @param path Position[]
+     * @param i int
+     * @param current Position
+     * @return int
+     */
+    private int findRejoinIndex( Position[] path, int i, Position current ){
+        for(int j = i+1; j < path.length; j++){
+            if(Double.compare(current.getDistanceTo(path[j]), profile.getRejoinDistance()) > 0
+                    && grid.isClear(path[j], detourClearance)){
+                return j;
+            }
+        }
+        return path.length-1;
+    }
+
+    /**
+     * Adjusts robots linear-speed after angle of next turn, up to the ceiling the
+     * speed map has learned for this part of the route and lowered on slopes and
+     * with a low battery, keeping the time to
+     * collision along the commanded arc above the collision horizon, for the
+     * current scan as well as for where moving obstacles are heading
      * @param nextPosition Position
      */
     private void adjustLinearSpeed( Position nextPosition ) throws Exception {
-        double margin = marginPercentage(getHeadingAngle(), getBearingToPoint(nextPosition));
-        if(Double.compare(margin, 0.20) < 0){
-            dr.setLinearSpeed(linearSpeed);
+        double margin = Angles.absDifference(getBearingToPoint(nextPosition), getHeadingAngle());
+        boolean slowedDown = false;
+        if(margin < profile.getStopTurnMargin()){
+            double speed = linearSpeed * speedMap.getCeiling(speedBin) * getConditionFactor();
+            if(onDetour){
+                //Keep to the turns a detour takes, the tightest of which must reach the look ahead distance
+                speed = Math.min(speed, profile.getAngularSpeed() * profile.getLookAheadDistance() / 2);
+            }
+            double limited = governor.limit(ler.getTimestamp(), ler.getEchoes(), speed, sentAngularSpeed,
+                    dr.getAngularSpeed());
+            long now = link.currentTimeMillis();
+            predictor.predict(now);
+            limited = governor.limit(tracker, now, predictor.getX(), predictor.getY(), predictor.getHeading(),
+                    limited, dr.getAngularSpeed());
+            slowedDown = Double.compare(limited, speed) < 0;
+            dr.setLinearSpeed(limited);
 
         } else {
             dr.setLinearSpeed(0);
         }
-        putRequest(dr);
+        drive();
+        speedMap.record(speedBin, getClearance(), trackingError, slowedDown);
+        analytics.record(link.currentTimeMillis(), arcLength, trackingError,
+                Angles.difference(predictor.getHeading(), route.direction(routeSegment)), dr.getLinearSpeed());
     }
 
     /**
-     * Adjusts the angular speed of the robot according to the angle to next position
+     * Adjusts the angular speed of the robot according to the angle to next position.
+     * The command is sent by adjustLinearSpeed, once the speed has been limited
+     * for the arc this angular speed drives.
      * @param nextPosition Position
      * @throws Exception
      */
     private void adjustAngularSpeed( Position nextPosition) throws Exception {
-        if(!checkIfWithinMargin(getHeadingAngle(), getBearingToPoint(nextPosition), headingMargin)){
+        if(!Angles.withinSector(getHeadingAngle(), getBearingToPoint(nextPosition), profile.getHeadingMargin())){
             dr.setAngularSpeed(calculateTurn(nextPosition));
-            putRequest(dr);
         } else {
             avoidObstacles();
         }
@@ -106,64 +682,96 @@ public class RoB1
      * @throws Exception
      */
     private void scan( Position nextPosition ) throws Exception {
-        int margin = headingToBearingMargin(nextPosition);
+        if(!scannedFrame.changed(ler.getTimestamp(), lr.getTimestamp(), nextPosition)){
+            return;
+        }
+        double margin = headingToBearingMargin(nextPosition);
         adjustLookAheadDistance(margin);
         adjustPositionsToSkip(margin);
     }
 
+    /**
+     * Factor the speed is lowered by for the tilt of the ground and the charge of
+     * the battery. Both lower the speed linearly, from full speed at FullSpeedTilt
+     * down to MaxTiltSpeedFactor at MaxTilt and beyond, and from full speed at
+     * FullSpeedCharge down to EmptyChargeSpeedFactor at an empty battery.
+     * Values that are not known, not read yet or gone stale, do not lower the speed.
+     * @return double
+     */
+    private double getConditionFactor() {
+        if(slowSensors == null){
+            return 1;
+        }
+        double factor = 1;
+        double tilt = Math.max(Math.abs(slowSensors.getPitch()), Math.abs(slowSensors.getRoll()));
+        if(tilt > profile.getFullSpeedTilt()){
+            double share = Math.min(1, (tilt - profile.getFullSpeedTilt())
+                    / (profile.getMaxTilt() - profile.getFullSpeedTilt()));
+            factor = 1 - share * (1 - profile.getMaxTiltSpeedFactor());
+        }
+        double remaining = slowSensors.getRemaining();
+        if(remaining < profile.getFullSpeedCharge()){
+            double share = 1 - Math.max(0, remaining) / profile.getFullSpeedCharge();
+            factor = Math.min(factor, 1 - share * (1 - profile.getEmptyChargeSpeedFactor()));
+        }
+        return factor;
+    }
+
     /**
      * Uses laser to avoid obstacles to the left and right
      * @throws Exception
      */
     private void avoidObstacles() throws Exception {
         double allowedMargin = lookAheadDistance;
-        int angle = 20;
-        double speed = 0.7;
-        if(Double.compare(lookAheadDistance, 0.7)<0) {
-            allowedMargin = 0.7;
+        double speed = profile.getAvoidSpeed();
+        if(Double.compare(lookAheadDistance, profile.getObstacleMargin())<0) {
+            allowedMargin = profile.getObstacleMargin();
         }
-        double leftObstacle = distanceToObstacle(-angle,angle);
-        double rightObstacle = distanceToObstacle(angle,angle);
+        updateObstacleSectors();
         if(Double.compare(leftObstacle, allowedMargin ) < 0
                 || Double.compare(rightObstacle, allowedMargin ) < 0){
             if(Double.compare(leftObstacle,rightObstacle) < 0){
-                dr.setAngularSpeed(speed-distanceToObstacle(-angle,angle));
+                dr.setAngularSpeed(speed-leftObstacle);
             } else  {
-                dr.setAngularSpeed(-speed + distanceToObstacle(angle,angle));
+                dr.setAngularSpeed(-speed + rightObstacle);
             }
         } else {
             dr.setAngularSpeed(0);
         }
-        putRequest(dr);
     }
 
     /**
-     * Calculates margin between heading and bearing in degrees
-     * @param nextPosition Position
-     * @return int
+     * Finds the closest obstacles in the sectors used by avoidObstacles, unless
+     * they were already found for the current laser frame
      * @throws Exception
      */
-    private int headingToBearingMargin( Position nextPosition ) throws Exception {
-        double bearing = getBearingToPoint(nextPosition);
-        double heading = getHeadingAngle();
-        if(!checkIfWithinLimits(bearing, heading, wrapAngle(heading+180))){
-            ///bearing-point left of heading
-            return -marginInDegrees(heading , bearing);
-        } else {
-            //bearing-point right of heading
-            return marginInDegrees(bearing, heading);
+    private void updateObstacleSectors() throws Exception {
+        if(sectorsFrame.changed(ler.getTimestamp())){
+            int angle = profile.getAvoidAngle();
+            leftObstacle = distanceToObstacle(-angle,angle);
+            rightObstacle = distanceToObstacle(angle,angle);
         }
     }
 
+    /**
+     * Calculates margin between heading and bearing
+     * @param nextPosition Position
+     * @return radians, positive when the position is to the left of the heading
+     * @throws Exception
+     */
+    private double headingToBearingMargin( Position nextPosition ) throws Exception {
+        return Angles.difference(getBearingToPoint(nextPosition), getHeadingAngle());
+    }
+
     /**
      * Gets the distance to closest obstacle within given margin of given angle
-     * @param angle int
-     * @param margin int
+     * @param angle beams from the center beam, positive counter-clockwise
+     * @param margin beams on either side
      * @return double
      * @throws Exception
      */
     private double distanceToObstacle(int angle, int margin ) throws Exception {
-        int centerPoint = 136 + angle;
+        int centerPoint = LaserGeometry.CENTER_INDEX + angle;
         double distance = ler.getEchoes()[centerPoint];
         for (int i = centerPoint - margin; i < centerPoint + margin; i++) {
             if (Double.compare(ler.getEchoes()[i], distance) < 0) {
@@ -175,22 +783,23 @@ public class RoB1
 
     /**
      * Adjusts lookAheadDistance according to closest obstacle in bearing
-     * @param headingToBearingMargin int
+     * @param headingToBearingMargin radians
      * @throws Exception
      */
-    private void adjustLookAheadDistance( int headingToBearingMargin ) throws Exception {
-        int centerPoint = 136 + headingToBearingMargin;
-        int laserMargin = 40;
-        if(centerPoint<270-laserMargin && centerPoint > laserMargin) {
-            lookAheadDistance = limitLookAheadDistance(distanceToObstacle(headingToBearingMargin, laserMargin));
+    private void adjustLookAheadDistance( double headingToBearingMargin ) throws Exception {
+        int beam = LaserGeometry.beamOffset(headingToBearingMargin);
+        int centerPoint = LaserGeometry.CENTER_INDEX + beam;
+        int laserMargin = profile.getLookAheadLaserMargin();
+        if(centerPoint<LaserGeometry.BEAM_COUNT-1-laserMargin && centerPoint > laserMargin) {
+            lookAheadDistance = limitLookAheadDistance(distanceToObstacle(beam, laserMargin));
         }
     }
 
     private double limitLookAheadDistance(double lookAheadDistance){
-        if(Double.compare(lookAheadDistance,1.5)>0){
-            return 1.5;
-        } else if(Double.compare(lookAheadDistance,0)<0.1){
-            return 0.1;
+        if(Double.compare(lookAheadDistance,profile.getMaxLookAheadDistance())>0){
+            return profile.getMaxLookAheadDistance();
+        } else if(Double.compare(lookAheadDistance,profile.getMinLookAheadDistance())<0){
+            return profile.getMinLookAheadDistance();
         } else {
             return lookAheadDistance;
         }
@@ -198,93 +807,35 @@ public class RoB1
 
     /**
      * Adjusts positionsToSkip according to how tight the turn to next position is
-     * @param margin int
+     * @param margin radians
      */
-    private void adjustPositionsToSkip(int margin){
-        if(margin<5){
-            positionsToSkip = 10;
-        } else if(margin<20){
-            positionsToSkip = 5;
+    private void adjustPositionsToSkip(double margin){
+        double turn = Math.abs(margin);
+        if(turn<profile.getStraightMargin()){
+            positionsToSkip = profile.getStraightPositionsToSkip();
+        } else if(turn<profile.getCurveMargin()){
+            positionsToSkip = profile.getCurvePositionsToSkip();
         } else {
-            positionsToSkip = 2;
+            positionsToSkip = profile.getSharpPositionsToSkip();
         }
     }
 
 
-    /**
-     * Calculates margin between heading and bearing in percentages of whole
-     * radius of 360.
-     * @param heading double
-     * @param bearing double
-     * @return double
-     */
-    private double marginPercentage( double heading, double bearing){
-        Integer degree =  marginInDegrees(heading, bearing);
-        return new Double(degree.toString())/360;
-    }
-
-    /**
-     * Calculates margin between heading and bearing in degrees
-     * @param var1 double
-     * @param var2 double
-     * @return int
-     */
-    private int marginInDegrees( double var1, double var2){
-        int margin1 = (int) wrapAngle(Math.round( var2 - var1 ));
-        int margin2 = (int) wrapAngle(Math.round( var1 - var2 ));
-        if (margin1 > margin2){
-            return margin2;
-        } else {
-            return  margin1;
-        }
-    }
-
-    /**
-     * Checks whether the given headingAngle is within given margin of the bearing.
-     * @param heading double
-     * @param bearing double
-     * @param margin double
-     * @return boolean
-     */
-    private boolean checkIfWithinMargin(double heading, double bearing, double margin ){
-        double lowerLimit = wrapAngle(bearing - margin);
-        double upperLimit = wrapAngle(bearing + margin);
-        return checkIfWithinLimits(heading, lowerLimit, upperLimit);
-    }
-
-    /**
-     * If necessary, wraps an angle to the 0-360 degree range
-     * @param angle double
-     * @return double
-     */
-    private double wrapAngle( double angle){
-        if(Double.compare(angle, 0) < 0){
-            angle = angle + 360;
-            return angle;
-        }
-        if(Double.compare(angle, 360) > 0){
-            angle = angle - 360;
-            return angle;
-        }
-        return angle;
-    }
-
     /**
      * Calculates whether the robot should turn right or left and at what angular speed.
      * @param nextPosition Position
      * @return double
      */
     private double calculateTurn( Position nextPosition) throws Exception {
-        double oppositeHeadingAngle = wrapAngle(getHeadingAngle()-180);
-        double margin = marginPercentage(getBearingToPoint(nextPosition), getHeadingAngle());
+        double margin = Angles.difference(getBearingToPoint(nextPosition), getHeadingAngle());
         double speed;
 
-        if(Double.compare(margin, 0.07) < 0 ){
-            speed = 0.5;
+        if(Math.abs(margin) < profile.getSlowTurnMargin()){
+            speed = profile.getSlowTurnSpeed();
         } else {
-            speed = angularSpeed;
+            speed = profile.getAngularSpeed();
         }
-        if(!checkIfWithinLimits(getBearingToPoint(nextPosition),getHeadingAngle(),oppositeHeadingAngle)){
+        if(margin < 0){
             return -speed;
 
         } else {
@@ -295,59 +846,32 @@ public class RoB1
     }
 
     /**
-     * Checks if angle is within given limits
-     * @param angle double
-     * @param lowerLimit double
-     * @param upperLimit double
-     * @return boolean
-     */
-    private boolean checkIfWithinLimits(double angle, double lowerLimit, double upperLimit ){
-        if(Double.compare(lowerLimit, upperLimit) > 0){
-            return (Double.compare(angle, lowerLimit) > 0 || Double.compare(angle, upperLimit) < 0);
-        } else {
-            return (Double.compare(angle, lowerLimit) > 0 && Double.compare(angle, upperLimit) < 0);
-        }
-    }
-
-
-
-    /**
-    * Extract the robot heading from the response.
-    * @return double
+    * Extract the robot heading, as predicted for the current time.
+    * @return radians
     */
    private double getHeadingAngle() throws Exception
    {
-       getResponse(lr);
-       double e[] = lr.getOrientation();
-       return convertToDegrees(2 * Math.atan2(e[3], e[0]));
+       predictor.predict(link.currentTimeMillis());
+       return predictor.getHeading();
    }
 
-    /**
-     * Converts angle from robot to degrees.
-     * @param angle double
-     * @return double
-     */
-    private double convertToDegrees( double angle ) {
-        return wrapAngle(Math.toDegrees(angle));
-    }
-
     /**
      * Get Bearing to Point
      * @param position Position
-     * @return double
+     * @return radians
      */
     private double getBearingToPoint(Position position) throws Exception {
-       return convertToDegrees(getCurrentPosition().getBearingTo(position));
+       return getCurrentPosition().getBearingTo(position);
     }
 
 
     /**
-    * Extract the current position
+    * Extract the current position, as predicted for the current time
     * @return Position
     */
     private Position getCurrentPosition() throws Exception {
-        getResponse(lr);
-        return lr.getPosition();
+        predictor.predict(link.currentTimeMillis());
+        return new Position(predictor.getX(), predictor.getY());
     }
 
     /**
@@ -369,30 +893,12 @@ public class RoB1
     */
    private int putRequest(Request r) throws Exception
    {
-      URL url = new URL(host + ":" + port + r.getPath());
-
-      HttpURLConnection connection = (HttpURLConnection)url.openConnection();
-
-      connection.setDoOutput(true);
-
-      connection.setRequestMethod("POST");
-      connection.setRequestProperty("Content-Type", "application/json");
-      connection.setUseCaches (false);
-
-      OutputStreamWriter out = new OutputStreamWriter(
-            connection.getOutputStream());
-
-      // construct a JSON string
-      String json = mapper.writeValueAsString(r.getData());
-
-      // write it to the web server
-      out.write(json);
-      out.close();
-
-      // wait for response code
-      int rc = connection.getResponseCode();
-
-      return rc;
+      try {
+         return link.putRequest(r);
+      } catch (Exception e) {
+         linkFailed = true;
+         throw e;
+      }
    }
 
    /**
@@ -403,20 +909,12 @@ public class RoB1
     */
    private Response getResponse(Response r) throws Exception
    {
-      URL url = new URL(host + ":" + port + r.getPath());
-
-      // open a connection to the web server and then get the resulting data
-      URLConnection connection = url.openConnection();
-      BufferedReader in = new BufferedReader(new InputStreamReader(
-            connection.getInputStream()));
-
-      // map it to a Java Map
-      Map<String, Object> data = mapper.readValue(in, Map.class);
-      r.setData(data);
-      in.close();
-
-      return r;
+      try {
+         return link.getResponse(r);
+      } catch (Exception e) {
+         linkFailed = true;
+         throw e;
+      }
    }
 
 }
-
@@ -0,0 +1,9 @@
+/**
+ * The connection RoB1 uses to reach the robot, real or simulated.
+ */
+public interface RobotLink
+{
+   int putRequest(Request r) throws Exception;
+   Response getResponse(Response r) throws Exception;
+   long currentTimeMillis();
+}
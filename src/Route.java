@@ -0,0 +1,133 @@
+/**
+ * A recorded path seen as a polyline: the segments between consecutive
+ * positions, the arc length at each position and a hash that identifies the
+ * path across runs. Positions are projected onto the route by searching the
+ * segments around a hint, normally the segment found the tick before.
+ */
+public class Route
+{
+    private final Position[] positions;
+    private final double[] arcLength;
+    private final long hash;
+
+    public Route(Position[] positions) {
+        this.positions = positions;
+        this.arcLength = new double[positions.length];
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < positions.length; i++) {
+            if (i > 0) {
+                arcLength[i] = arcLength[i - 1] + positions[i - 1].getDistanceTo(positions[i]);
+            }
+            h = fnv(h, Double.doubleToLongBits(positions[i].getX()));
+            h = fnv(h, Double.doubleToLongBits(positions[i].getY()));
+        }
+        this.hash = h;
+    }
+
+    private static long fnv(long h, long bits) {
+        for (int i = 0; i < 8; i++) {
+            h ^= (bits >>> (8 * i)) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Finds the segment closest to a point, among the segments from a little
+     * before the hint to window segments after it
+     * @param x double
+     * @param y double
+     * @param hint segment to search around
+     * @param window int
+     * @return index of the first position of the segment
+     */
+    public int nearestSegment(double x, double y, int hint, int window) {
+        int from = Math.max(0, hint - window / 4);
+        int to = Math.min(getSegmentCount(), hint + window);
+        int nearest = Math.min(Math.max(hint, 0), getSegmentCount() - 1);
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double distance = Math.abs(crossTrackError(i, x, y));
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Signed distance from a segment to a point, positive to the left of the
+     * direction of travel. Beyond the ends of the segment the distance to the end is used.
+     * @param segment int
+     * @param x double
+     * @param y double
+     * @return double
+     */
+    public double crossTrackError(int segment, double x, double y) {
+        Position a = positions[segment];
+        Position b = positions[Math.min(segment + 1, positions.length - 1)];
+        double dx = b.getX() - a.getX();
+        double dy = b.getY() - a.getY();
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : ((x - a.getX()) * dx + (y - a.getY()) * dy) / length2;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x - (a.getX() + t * dx);
+        double ey = y - (a.getY() + t * dy);
+        double distance = Math.sqrt(ex * ex + ey * ey);
+        return dx * ey - dy * ex < 0 ? -distance : distance;
+    }
+
+    /**
+     * Arc length of the point of a segment closest to the given point
+     * @param segment int
+     * @param x double
+     * @param y double
+     * @return meters from the start of the route
+     */
+    public double arcLength(int segment, double x, double y) {
+        Position a = positions[segment];
+        int next = Math.min(segment + 1, positions.length - 1);
+        double length = arcLength[next] - arcLength[segment];
+        if (length == 0) {
+            return arcLength[segment];
+        }
+        Position b = positions[next];
+        double t = ((x - a.getX()) * (b.getX() - a.getX()) + (y - a.getY()) * (b.getY() - a.getY()))
+                / (length * length);
+        return arcLength[segment] + Math.max(0, Math.min(1, t)) * length;
+    }
+
+    /**
+     * Direction of travel along a segment
+     * @param segment int
+     * @return radians
+     */
+    public double direction(int segment) {
+        return positions[segment].getBearingTo(positions[Math.min(segment + 1, positions.length - 1)]);
+    }
+
+    public int getSegmentCount() {
+        return Math.max(1, positions.length - 1);
+    }
+
+    public double getLength() {
+        return arcLength[arcLength.length - 1];
+    }
+
+    public double getArcLength(int index) {
+        return arcLength[index];
+    }
+
+    public Position[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Identifies the path: two routes with the same positions have the same hash
+     * @return long
+     */
+    public long getHash() {
+        return hash;
+    }
+}
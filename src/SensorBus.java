@@ -0,0 +1,390 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the robot once for each Response type and hands every new frame to any
+ * number of subscribers, so adding a consumer adds no load on the robot.
+ * Subscribers follow the reactive-streams contract of java.util.concurrent.Flow:
+ * nothing is delivered beyond what has been requested, and each subscriber is
+ * called from one thread at a time. Frames a subscriber has not asked for yet
+ * wait in a bounded buffer whose overflow policy is chosen per subscriber.
+ * Published frames are never modified and may be shared between subscribers.
+ * A polled type whose robot has not answered for STALE_PERIODS polling periods
+ * is no longer fresh.
+ */
+public class SensorBus
+{
+    public static final int STALE_PERIODS = 3;
+
+    /**
+     * What to do with a frame that arrives when a subscriber's buffer is full
+     */
+    public enum Overflow
+    {
+        /** Drop the oldest buffered frame to make room */
+        DROP_OLDEST,
+        /** Keep only the newest frame, whatever the capacity */
+        LATEST_ONLY
+    }
+
+    public interface Subscriber
+    {
+        void onSubscribe(Subscription subscription);
+        void onNext(Response frame);
+        void onError(Throwable error);
+        void onComplete();
+    }
+
+    public interface Subscription
+    {
+        void request(long n);
+        void cancel();
+    }
+
+    private final RobotLink link;
+    private final ScheduledExecutorService poller;
+    private final ExecutorService delivery;
+    private final List<Feed> feeds = new CopyOnWriteArrayList<Feed>();
+    private final Map<String, Response> latest = new HashMap<String, Response>();
+    private final Map<String, Long> periods = new HashMap<String, Long>();
+    private final Map<String, Long> receivedAt = new HashMap<String, Long>();
+
+    /**
+     * Create a bus reading from the given link. Polls are made one at a time,
+     * so the link does not need to be thread safe for responses.
+     * @param link RobotLink
+     */
+    public SensorBus(RobotLink link) {
+        this.link = link;
+        this.poller = Executors.newSingleThreadScheduledExecutor(Threads.daemon("sensor-bus-poller"));
+        this.delivery = Executors.newCachedThreadPool(Threads.daemon("sensor-bus-delivery"));
+    }
+
+    /**
+     * Starts polling a Response type. A fetched frame is published only if its
+     * TimeStamp differs from the previous one, but counts as received either way.
+     * @param type class of the response, must have a public no-argument constructor
+     * @param periodMillis long
+     * @throws Exception
+     */
+    public void poll(final Class<? extends Response> type, long periodMillis) throws Exception {
+        synchronized (latest) {
+            periods.put(newResponse(type).getPath(), periodMillis);
+        }
+        poller.scheduleWithFixedDelay(new Runnable() {
+            private boolean failing;
+
+            public void run() {
+                try {
+                    Response frame = link.getResponse(newResponse(type));
+                    failing = false;
+                    Response previous = getLatest(frame.getPath());
+                    if (previous == null || previous.getTimestamp() != frame.getTimestamp()) {
+                        publish(frame);
+                    } else {
+                        received(frame.getPath());
+                    }
+                } catch (Exception e) {
+                    //Report only when polling starts failing, not on every period
+                    if (!failing) {
+                        System.err.println("Polling " + type.getName() + " failed: " + e);
+                        failing = true;
+                    }
+                }
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Response newResponse(Class<? extends Response> type) throws Exception {
+        return type.getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Hands a frame to every subscriber of its type
+     * @param frame Response
+     */
+    public void publish(Response frame) {
+        synchronized (latest) {
+            latest.put(frame.getPath(), frame);
+            receivedAt.put(frame.getPath(), System.currentTimeMillis());
+        }
+        long now = System.currentTimeMillis();
+        for (Feed feed : feeds) {
+            if (feed.path.equals(frame.getPath())) {
+                feed.offer(frame, now);
+            }
+        }
+    }
+
+    /**
+     * The newest published frame with the given path
+     * @param path as returned by Response.getPath()
+     * @return Response or null
+     */
+    public Response getLatest(String path) {
+        synchronized (latest) {
+            return latest.get(path);
+        }
+    }
+
+    private void received(String path) {
+        synchronized (latest) {
+            receivedAt.put(path, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Local time a frame with the given path was last received, new or not
+     * @param path as returned by Response.getPath()
+     * @return milliseconds, 0 if there has been none
+     */
+    public long getReceivedAt(String path) {
+        synchronized (latest) {
+            Long at = receivedAt.get(path);
+            return at == null ? 0 : at;
+        }
+    }
+
+    /**
+     * Whether a frame with the given path has been received within STALE_PERIODS
+     * polling periods. Frames of a type that is not polled are published by
+     * hand and do not go stale.
+     * @param path as returned by Response.getPath()
+     * @return boolean
+     */
+    public boolean isFresh(String path) {
+        synchronized (latest) {
+            Long at = receivedAt.get(path);
+            Long period = periods.get(path);
+            return at != null && (period == null || System.currentTimeMillis() - at <= STALE_PERIODS * period);
+        }
+    }
+
+    /**
+     * Subscribes to the frames of a Response type
+     * @param type Class
+     * @param subscriber Subscriber
+     * @param capacity most frames buffered for the subscriber
+     * @param overflow Overflow
+     * @return the feed, which also reports how far the subscriber lags behind
+     * @throws Exception
+     */
+    public Feed subscribe(Class<? extends Response> type, Subscriber subscriber, int capacity,
+                          Overflow overflow) throws Exception {
+        Feed feed = new Feed(newResponse(type).getPath(), subscriber, capacity, overflow);
+        feeds.add(feed);
+        subscriber.onSubscribe(feed);
+        return feed;
+    }
+
+    /**
+     * Stops polling and completes all subscriptions. Frames already requested
+     * are delivered first; those a subscriber has not asked for are dropped,
+     * so that it is completed whatever its demand.
+     */
+    public void close() {
+        poller.shutdownNow();
+        for (Feed feed : feeds) {
+            feed.complete();
+        }
+        delivery.shutdown();
+    }
+
+    /**
+     * The subscription of one subscriber, with its buffer and lag metrics
+     */
+    public class Feed implements Subscription, Runnable
+    {
+        private final String path;
+        private final Subscriber subscriber;
+        private final int capacity;
+        private final Overflow overflow;
+        private final ArrayDeque<Response> frames = new ArrayDeque<Response>();
+        private final ArrayDeque<Long> publishedAt = new ArrayDeque<Long>();
+        private long demand;
+        private boolean draining;
+        private boolean cancelled;
+        private boolean completed;
+        private Throwable failure;
+
+        private long delivered;
+        private long dropped;
+        private long lastLag;
+        private long maxLag;
+
+        private Feed(String path, Subscriber subscriber, int capacity, Overflow overflow) {
+            this.path = path;
+            this.subscriber = subscriber;
+            this.capacity = overflow == Overflow.LATEST_ONLY ? 1 : Math.max(1, capacity);
+            this.overflow = overflow;
+        }
+
+        private void offer(Response frame, long now) {
+            synchronized (this) {
+                if (cancelled || completed || failure != null) {
+                    return;
+                }
+                if (frames.size() == capacity) {
+                    frames.pollFirst();
+                    publishedAt.pollFirst();
+                    dropped++;
+                }
+                frames.addLast(frame);
+                publishedAt.addLast(now);
+            }
+            schedule();
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                //Signalled from the delivery loop, so it cannot overlap an onNext
+                synchronized (this) {
+                    if (cancelled || failure != null) {
+                        return;
+                    }
+                    failure = new IllegalArgumentException("Requested " + n + " frames");
+                    frames.clear();
+                    publishedAt.clear();
+                }
+                feeds.remove(this);
+                schedule();
+                return;
+            }
+            synchronized (this) {
+                //Saturate rather than overflow, Long.MAX_VALUE means unbounded
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                frames.clear();
+                publishedAt.clear();
+            }
+            feeds.remove(this);
+        }
+
+        private void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Starts a delivery unless one is already running for this subscriber
+         */
+        private void schedule() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                delivery.execute(this);
+            } catch (Exception e) {
+                synchronized (this) {
+                    draining = false;
+                }
+            }
+        }
+
+        /**
+         * Delivers buffered frames as long as there is demand
+         */
+        public void run() {
+            while (true) {
+                Response frame;
+                boolean finished = false;
+                Throwable error = null;
+                synchronized (this) {
+                    if (failure != null && !cancelled) {
+                        error = failure;
+                        cancelled = true;
+                        draining = false;
+                        frame = null;
+                    } else if (cancelled || frames.isEmpty() || demand == 0) {
+                        finished = completed && !cancelled;
+                        if (finished) {
+                            dropped += frames.size();
+                            frames.clear();
+                            publishedAt.clear();
+                            cancelled = true;
+                        }
+                        draining = false;
+                        frame = null;
+                    } else {
+                        frame = frames.pollFirst();
+                        lastLag = System.currentTimeMillis() - publishedAt.pollFirst();
+                        maxLag = Math.max(maxLag, lastLag);
+                        delivered++;
+                        if (demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+                    }
+                }
+                if (frame == null) {
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else if (finished) {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                try {
+                    subscriber.onNext(frame);
+                } catch (Throwable t) {
+                    cancel();
+                    subscriber.onError(t);
+                    return;
+                }
+            }
+        }
+
+        public Overflow getOverflow() {
+            return overflow;
+        }
+
+        public synchronized long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * Frames that were dropped because the buffer was full
+         * @return long
+         */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Frames published but not yet delivered
+         * @return int
+         */
+        public synchronized int getQueued() {
+            return frames.size();
+        }
+
+        /**
+         * Time between publishing and delivering the last delivered frame
+         * @return milliseconds
+         */
+        public synchronized long getLastLag() {
+            return lastLag;
+        }
+
+        public synchronized long getMaxLag() {
+            return maxLag;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The latest pose and laser scan combined into one compact binary frame, as
+ * served by SensorGateway. A frame is about 1.2 kB, small enough for a single
+ * UDP datagram, where the two Lokarria JSON responses are several times larger.
+ *
+ * Layout: magic, pose timestamp, X, Y, W, Z of the pose, status,
+ * laser timestamp, echo count and the echoes as floats.
+ *
+ * The pose is taken to be planar: Z of the position and X and Y of the
+ * orientation quaternion are not stored, and come back as 0. That holds for a
+ * robot on flat ground, whose orientation is a rotation about the Z axis only.
+ */
+public class SensorFrame
+{
+    private static final int MAGIC = 0x52424631;
+
+    private final long poseTimestamp;
+    private final double x;
+    private final double y;
+    private final double w;
+    private final double z;
+    private final int status;
+    private final long laserTimestamp;
+    private final float[] echoes;
+
+    private SensorFrame(long poseTimestamp, double x, double y, double w, double z, int status,
+                        long laserTimestamp, float[] echoes) {
+        this.poseTimestamp = poseTimestamp;
+        this.x = x;
+        this.y = y;
+        this.w = w;
+        this.z = z;
+        this.status = status;
+        this.laserTimestamp = laserTimestamp;
+        this.echoes = echoes;
+    }
+
+    /**
+     * Encodes a localization and a laser response as a frame
+     * @param lr LocalizationResponse
+     * @param ler LaserEchoesResponse
+     * @return byte[]
+     * @throws IOException
+     */
+    public static byte[] encode(LocalizationResponse lr, LaserEchoesResponse ler) throws IOException {
+        double[] orientation = lr.getOrientation();
+        Position position = lr.getPosition();
+        double[] echoes = ler.getEchoes();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 4 * echoes.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(lr.getTimestamp());
+        out.writeDouble(position.getX());
+        out.writeDouble(position.getY());
+        out.writeDouble(orientation[0]);
+        out.writeDouble(orientation[3]);
+        out.writeInt(lr.getStatus());
+        out.writeLong(ler.getTimestamp());
+        out.writeShort(echoes.length);
+        for (double echo : echoes) {
+            out.writeFloat((float) echo);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a frame
+     * @param bytes byte[]
+     * @param length number of bytes used
+     * @return SensorFrame
+     * @throws IOException if the bytes are not a frame
+     */
+    public static SensorFrame decode(byte[] bytes, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a sensor frame");
+        }
+        long poseTimestamp = in.readLong();
+        double x = in.readDouble();
+        double y = in.readDouble();
+        double w = in.readDouble();
+        double z = in.readDouble();
+        int status = in.readInt();
+        long laserTimestamp = in.readLong();
+        float[] echoes = new float[in.readShort()];
+        for (int i = 0; i < echoes.length; i++) {
+            echoes[i] = in.readFloat();
+        }
+        return new SensorFrame(poseTimestamp, x, y, w, z, status, laserTimestamp, echoes);
+    }
+
+    /**
+     * The pose in the form Lokarria returns it from /lokarria/localization
+     * @return Map
+     */
+    public Map<String, Object> localizationData() {
+        Map<String, Object> orientation = new HashMap<String, Object>();
+        orientation.put("W", w);
+        orientation.put("X", 0.0);
+        orientation.put("Y", 0.0);
+        orientation.put("Z", z);
+        Map<String, Object> position = new HashMap<String, Object>();
+        position.put("X", x);
+        position.put("Y", y);
+        position.put("Z", 0.0);
+        Map<String, Object> pose = new HashMap<String, Object>();
+        pose.put("Orientation", orientation);
+        pose.put("Position", position);
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("Pose", pose);
+        data.put("Status", status);
+        data.put("TimeStamp", poseTimestamp);
+        return data;
+    }
+
+    /**
+     * Fills in a laser response with the scan, copying the echoes straight into
+     * its array instead of boxing them into a list
+     * @param ler LaserEchoesResponse
+     */
+    public void fillLaser(LaserEchoesResponse ler) {
+        ler.setEchoes(laserTimestamp, echoes);
+    }
+}
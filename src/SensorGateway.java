@@ -0,0 +1,223 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs next to the DssHost and polls Lokarria for the pose and the laser scan
+ * at their own rates. The latest of both is served as one SensorFrame from
+ * GET /frame, and optionally pushed as a UDP datagram to one client whenever
+ * either changes. Any other request under /lokarria/ is forwarded to the robot,
+ * so a controller only needs a single keep-alive connection to the gateway.
+ *
+ * Usage: SensorGateway robotHost robotPort listenPort poseMillis laserMillis [pushHost:pushPort]
+ */
+public class SensorGateway
+{
+    private final String robotHost;
+    private final int robotPort;
+    private final HttpRobotLink robot;
+    private final ScheduledExecutorService poller = Executors.newScheduledThreadPool(2);
+    private DatagramSocket pushSocket;
+    private InetSocketAddress pushAddress;
+
+    private LocalizationResponse lr;
+    private LaserEchoesResponse ler;
+    private volatile byte[] frame;
+
+    /**
+     * Create a gateway to the robot at host "robotHost" and port "robotPort"
+     * @param robotHost normally http://127.0.0.1
+     * @param robotPort normally 50000
+     */
+    public SensorGateway(String robotHost, int robotPort) {
+        this.robotHost = robotHost;
+        this.robotPort = robotPort;
+        this.robot = new HttpRobotLink(robotHost, robotPort);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SensorGateway gateway = new SensorGateway(args[0], Integer.parseInt(args[1]));
+        if (args.length > 5) {
+            String[] push = args[5].split(":");
+            gateway.pushTo(new InetSocketAddress(push[0], Integer.parseInt(push[1])));
+        }
+        gateway.start(Integer.parseInt(args[2]), Long.parseLong(args[3]), Long.parseLong(args[4]));
+    }
+
+    /**
+     * Pushes every new frame to the given address
+     * @param address InetSocketAddress
+     * @throws IOException
+     */
+    public void pushTo(InetSocketAddress address) throws IOException {
+        pushSocket = new DatagramSocket();
+        pushAddress = address;
+    }
+
+    /**
+     * Starts polling the robot and serving frames
+     * @param listenPort port of the HTTP server
+     * @param poseMillis period of the localization polling
+     * @param laserMillis period of the laser polling
+     * @throws IOException
+     */
+    public void start(int listenPort, long poseMillis, long laserMillis) throws IOException {
+        poller.scheduleWithFixedDelay(new Polling("localization") {
+            protected void poll() throws Exception {
+                LocalizationResponse polled = new LocalizationResponse();
+                robot.getResponse(polled);
+                update(polled, null);
+            }
+        }, 0, poseMillis, TimeUnit.MILLISECONDS);
+        poller.scheduleWithFixedDelay(new Polling("laser") {
+            protected void poll() throws Exception {
+                LaserEchoesResponse polled = new LaserEchoesResponse();
+                robot.getResponse(polled);
+                update(null, polled);
+            }
+        }, 0, laserMillis, TimeUnit.MILLISECONDS);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(listenPort), 0);
+        server.createContext("/frame", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serveFrame(exchange);
+            }
+        });
+        server.createContext("/lokarria/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                forward(exchange);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /**
+     * Polls one sensor. A failure is reported when polling starts to fail and
+     * again when it recovers, not on every period in between.
+     */
+    private abstract static class Polling implements Runnable
+    {
+        private final String sensor;
+        private boolean failing;
+
+        Polling(String sensor) {
+            this.sensor = sensor;
+        }
+
+        public void run() {
+            try {
+                poll();
+                if (failing) {
+                    failing = false;
+                    System.err.println("Polling " + sensor + " recovered");
+                }
+            } catch (Exception e) {
+                if (!failing) {
+                    failing = true;
+                    System.err.println("Polling " + sensor + " failed: " + e);
+                }
+            }
+        }
+
+        protected abstract void poll() throws Exception;
+    }
+
+    /**
+     * Replaces the latest pose or scan and, once both are known, encodes a new frame
+     * @param polledPose LocalizationResponse or null
+     * @param polledScan LaserEchoesResponse or null
+     * @throws IOException
+     */
+    private synchronized void update(LocalizationResponse polledPose, LaserEchoesResponse polledScan)
+            throws IOException {
+        if (polledPose != null) {
+            if (lr != null && lr.getTimestamp() == polledPose.getTimestamp()) {
+                return;
+            }
+            lr = polledPose;
+        }
+        if (polledScan != null) {
+            if (ler != null && ler.getTimestamp() == polledScan.getTimestamp()) {
+                return;
+            }
+            ler = polledScan;
+        }
+        if (lr == null || ler == null) {
+            return;
+        }
+        byte[] encoded = SensorFrame.encode(lr, ler);
+        frame = encoded;
+        if (pushSocket != null) {
+            pushSocket.send(new DatagramPacket(encoded, encoded.length, pushAddress));
+        }
+    }
+
+    private void serveFrame(HttpExchange exchange) throws IOException {
+        byte[] latest = frame;
+        if (latest == null) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, latest.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(latest);
+        out.close();
+    }
+
+    /**
+     * Passes a request on to the robot and its answer back to the client
+     * @param exchange HttpExchange
+     * @throws IOException
+     */
+    private void forward(HttpExchange exchange) throws IOException {
+        URL url = new URL(robotHost + ":" + robotPort + exchange.getRequestURI());
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(exchange.getRequestMethod());
+        connection.setUseCaches(false);
+        if ("POST".equals(exchange.getRequestMethod())) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            OutputStream out = connection.getOutputStream();
+            out.write(readAll(exchange.getRequestBody()));
+            out.close();
+        }
+        int rc = connection.getResponseCode();
+        InputStream in = rc < 400 ? connection.getInputStream() : connection.getErrorStream();
+        byte[] body = in == null ? new byte[0] : readAll(in);
+        if (body.length == 0) {
+            exchange.sendResponseHeaders(rc, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(rc, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
+}
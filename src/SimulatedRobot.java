@@ -0,0 +1,221 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A local stand-in for Lokarria: a differential-drive robot with limited
+ * acceleration and a laser that sees circular obstacles, which may move at a
+ * constant velocity. Time only moves when
+ * the robot is talked to, every request or response takes callMillis of
+ * simulated time, so a lap runs as fast as the controller can compute it.
+ * The robot collides when it touches an obstacle or strays too far from the path.
+ */
+public class SimulatedRobot implements RobotLink
+{
+    private static final double LINEAR_ACCELERATION = 1.0;
+    private static final double ANGULAR_ACCELERATION = 4.0;
+
+    private final Position[] path;
+    private final double[][] obstacles;
+    private final double robotRadius;
+    private final double corridorWidth;
+    private final long callMillis;
+    private final long timeLimit;
+
+    private long time;
+    private double x;
+    private double y;
+    private double heading;
+    private double linearSpeed;
+    private double angularSpeed;
+    private double targetLinearSpeed;
+    private double targetAngularSpeed;
+    private int nearestIndex;
+
+    /**
+     * Create a simulated robot standing at the start of the path, facing its second position
+     * @param path Position[]
+     * @param obstacles rows of X, Y and radius, optionally followed by a velocity in X and Y
+     * @param robotRadius double
+     * @param corridorWidth how far from the path the robot may go before it counts as a collision
+     * @param callMillis simulated duration of each call
+     * @param timeLimit simulated milliseconds after which the lap is aborted
+     */
+    public SimulatedRobot(Position[] path, double[][] obstacles, double robotRadius,
+                          double corridorWidth, long callMillis, long timeLimit) {
+        this.path = path;
+        this.obstacles = obstacles;
+        this.robotRadius = robotRadius;
+        this.corridorWidth = corridorWidth;
+        this.callMillis = callMillis;
+        this.timeLimit = timeLimit;
+        this.x = path[0].getX();
+        this.y = path[0].getY();
+        if (path.length > 1) {
+            this.heading = path[0].getBearingTo(path[Math.min(path.length - 1, 10)]);
+        }
+    }
+
+    /**
+     * Reads obstacles from a JSON list of objects with X, Y and Radius, and
+     * optionally VX and VY for an obstacle that moves
+     * @param file File
+     * @return double[][]
+     * @throws Exception
+     */
+    public static double[][] readObstacles(File file) throws Exception {
+        @SuppressWarnings("unchecked")
+        Collection<Map<String, Object>> data =
+                (Collection<Map<String, Object>>) new ObjectMapper().readValue(file, Collection.class);
+        double[][] obstacles = new double[data.size()][];
+        int index = 0;
+        for (Map<String, Object> obstacle : data) {
+            obstacles[index++] = new double[] {
+                    ((Number) obstacle.get("X")).doubleValue(),
+                    ((Number) obstacle.get("Y")).doubleValue(),
+                    ((Number) obstacle.get("Radius")).doubleValue(),
+                    obstacle.containsKey("VX") ? ((Number) obstacle.get("VX")).doubleValue() : 0,
+                    obstacle.containsKey("VY") ? ((Number) obstacle.get("VY")).doubleValue() : 0};
+        }
+        return obstacles;
+    }
+
+    public int putRequest(Request r) throws Exception {
+        step();
+        if (r instanceof DifferentialDriveRequest) {
+            DifferentialDriveRequest drive = (DifferentialDriveRequest) r;
+            targetLinearSpeed = drive.getLinearSpeed();
+            targetAngularSpeed = drive.getAngularSpeed();
+        }
+        return 200;
+    }
+
+    public Response getResponse(Response r) throws Exception {
+        step();
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("TimeStamp", time);
+        if (r instanceof LocalizationResponse) {
+            Map<String, Object> orientation = new HashMap<String, Object>();
+            orientation.put("W", Math.cos(heading / 2));
+            orientation.put("X", 0.0);
+            orientation.put("Y", 0.0);
+            orientation.put("Z", Math.sin(heading / 2));
+            Map<String, Object> position = new HashMap<String, Object>();
+            position.put("X", x);
+            position.put("Y", y);
+            position.put("Z", 0.0);
+            Map<String, Object> pose = new HashMap<String, Object>();
+            pose.put("Orientation", orientation);
+            pose.put("Position", position);
+            data.put("Pose", pose);
+            data.put("Status", 4);
+        } else if (r instanceof LaserEchoesResponse) {
+            data.put("Echoes", scan());
+        } else {
+            throw new Exception("Not simulated: " + r.getPath());
+        }
+        r.setData(data);
+        return r;
+    }
+
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    /**
+     * Advances the simulation by one call
+     * @throws SimulationException when the robot collides or the time runs out
+     */
+    private void step() throws SimulationException {
+        double dt = callMillis / 1000.0;
+        linearSpeed = approach(linearSpeed, targetLinearSpeed, LINEAR_ACCELERATION * dt);
+        angularSpeed = approach(angularSpeed, targetAngularSpeed, ANGULAR_ACCELERATION * dt);
+        heading += angularSpeed * dt / 2;
+        x += linearSpeed * dt * Math.cos(heading);
+        y += linearSpeed * dt * Math.sin(heading);
+        heading += angularSpeed * dt / 2;
+        time += callMillis;
+
+        for (double[] obstacle : obstacles) {
+            double dx = obstacleX(obstacle) - x;
+            double dy = obstacleY(obstacle) - y;
+            if (dx * dx + dy * dy < (obstacle[2] + robotRadius) * (obstacle[2] + robotRadius)) {
+                throw new SimulationException("Collided with obstacle at " + obstacleX(obstacle) + ", " + obstacleY(obstacle));
+            }
+        }
+        if (distanceToPath() > corridorWidth) {
+            throw new SimulationException("Left the path at " + x + ", " + y);
+        }
+        if (time > timeLimit) {
+            throw new SimulationException("Lap not finished within " + timeLimit + " ms");
+        }
+    }
+
+    private double obstacleX(double[] obstacle) {
+        return obstacle.length > 3 ? obstacle[0] + obstacle[3] * time / 1000.0 : obstacle[0];
+    }
+
+    private double obstacleY(double[] obstacle) {
+        return obstacle.length > 4 ? obstacle[1] + obstacle[4] * time / 1000.0 : obstacle[1];
+    }
+
+    private static double approach(double value, double target, double maxChange) {
+        return value + Math.max(-maxChange, Math.min(maxChange, target - value));
+    }
+
+    /**
+     * Distance to the nearest path position, searched around the last nearest
+     * one, or along the whole path if the robot seems to have left it
+     */
+    private double distanceToPath() {
+        double nearest = distanceToPath(Math.max(0, nearestIndex - 50), Math.min(path.length, nearestIndex + 200));
+        if (nearest > corridorWidth) {
+            nearest = distanceToPath(0, path.length);
+        }
+        return nearest;
+    }
+
+    private double distanceToPath(int from, int to) {
+        Position here = new Position(x, y);
+        double nearest = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double distance = here.getDistanceTo(path[i]);
+            if (distance < nearest) {
+                nearest = distance;
+                nearestIndex = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Casts every laser beam against the obstacles
+     * @return ArrayList
+     */
+    private ArrayList<Double> scan() {
+        ArrayList<Double> echoes = new ArrayList<Double>(LaserGeometry.BEAM_COUNT);
+        for (int i = 0; i < LaserGeometry.BEAM_COUNT; i++) {
+            double angle = heading + LaserGeometry.angle(i);
+            double dx = Math.cos(angle);
+            double dy = Math.sin(angle);
+            double range = LaserGeometry.MAX_RANGE;
+            for (double[] obstacle : obstacles) {
+                double cx = obstacleX(obstacle) - x;
+                double cy = obstacleY(obstacle) - y;
+                double along = cx * dx + cy * dy;
+                double discriminant = along * along - (cx * cx + cy * cy - obstacle[2] * obstacle[2]);
+                if (discriminant >= 0) {
+                    double hit = along - Math.sqrt(discriminant);
+                    if (hit > 0 && hit < range) {
+                        range = hit;
+                    }
+                }
+            }
+            echoes.add(range);
+        }
+        return echoes;
+    }
+}
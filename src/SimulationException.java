@@ -0,0 +1,13 @@
+/**
+ * Thrown by SimulatedRobot when a lap fails: the robot collided, left the path
+ * or ran out of time. Anything else thrown during a simulated lap is a fault
+ * of the controller.
+ */
+public class SimulationException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    public SimulationException(String message) {
+        super(message);
+    }
+}
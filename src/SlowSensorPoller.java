@@ -0,0 +1,109 @@
+/**
+ * Follows the sensors that change slowly, the battery and the inclinometer,
+ * through a SensorBus that polls each at its own low rate. Only the newest
+ * frame of each is kept. The control loop reads the cached values, which are
+ * NaN until the first frame arrives, and again once the bus has had no answer
+ * to its polls for SensorBus.STALE_PERIODS periods, so that a sensor that
+ * stopped answering does not keep limiting the speed by what it said long ago.
+ * A sensor that keeps answering with the same frame stays fresh.
+ * Angles are in radians, the remaining charge in percent.
+ */
+public class SlowSensorPoller
+{
+    private final SensorBus bus;
+    private final String batteryPath = new BatteryResponse().getPath();
+    private final String inclinometerPath = new InclinometerResponse().getPath();
+
+    private volatile double remaining = Double.NaN;
+    private volatile double pitch = Double.NaN;
+    private volatile double roll = Double.NaN;
+
+    /**
+     * Create a poller reading from the given bus. The bus should not be the
+     * one the control loop reads from, as its polls are made one at a time.
+     * @param bus SensorBus
+     */
+    public SlowSensorPoller(SensorBus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * Starts polling
+     * @param batteryMillis period of the battery polling
+     * @param inclinometerMillis period of the inclinometer polling
+     * @throws Exception
+     */
+    public void start(long batteryMillis, long inclinometerMillis) throws Exception {
+        bus.subscribe(BatteryResponse.class, new Latest() {
+            public void onNext(Response frame) {
+                remaining = ((BatteryResponse) frame).getRemaining();
+            }
+        }, 1, SensorBus.Overflow.LATEST_ONLY);
+        bus.subscribe(InclinometerResponse.class, new Latest() {
+            public void onNext(Response frame) {
+                InclinometerResponse inclinometer = (InclinometerResponse) frame;
+                pitch = Math.toRadians(inclinometer.getPitchAngle());
+                roll = Math.toRadians(inclinometer.getRollAngle());
+            }
+        }, 1, SensorBus.Overflow.LATEST_ONLY);
+        bus.poll(BatteryResponse.class, batteryMillis);
+        bus.poll(InclinometerResponse.class, inclinometerMillis);
+    }
+
+    /**
+     * Takes every frame, of which the bus keeps only the newest
+     */
+    private abstract static class Latest implements SensorBus.Subscriber
+    {
+        public void onSubscribe(SensorBus.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onError(Throwable error) {
+            System.err.println("Reading slow sensors failed: " + error);
+        }
+
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * Remaining charge of the battery
+     * @return percent, or NaN if not known
+     */
+    public double getRemaining() {
+        return bus.isFresh(batteryPath) ? remaining : Double.NaN;
+    }
+
+    /**
+     * Pitch of the robot
+     * @return radians, or NaN if not known
+     */
+    public double getPitch() {
+        return bus.isFresh(inclinometerPath) ? pitch : Double.NaN;
+    }
+
+    /**
+     * Roll of the robot
+     * @return radians, or NaN if not known
+     */
+    public double getRoll() {
+        return bus.isFresh(inclinometerPath) ? roll : Double.NaN;
+    }
+
+    /**
+     * Local time the battery last answered a poll
+     * @return milliseconds, 0 if it has not
+     */
+    public long getBatteryPolledAt() {
+        return bus.getReceivedAt(batteryPath);
+    }
+
+    /**
+     * Local time the inclinometer last answered a poll
+     * @return milliseconds, 0 if it has not
+     */
+    public long getInclinometerPolledAt() {
+        return bus.getReceivedAt(inclinometerPath);
+    }
+}
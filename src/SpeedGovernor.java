@@ -0,0 +1,240 @@
+/**
+ * Caps the linear speed so that the time to collision along the commanded arc
+ * never drops below a horizon. For every echo the distance the robot can travel
+ * along the arc before touching the echo is computed; the shortest of these is
+ * the free distance, and the speed is limited to free distance / horizon.
+ * The robot is taken to be wider by the side clearance, so that it does not
+ * graze what it passes, as the arc it actually drives is never quite the one
+ * commanded.
+ * The angular speed is kept, so a lower linear speed means a tighter arc; the
+ * limit is therefore searched for, checking every candidate speed on the arc it
+ * would actually drive. The robot does not change its angular speed at once,
+ * so every arc between the angular speed last sent and the new one is checked.
+ * Works directly on the echo array and allocates nothing.
+ *
+ * Moving obstacles are checked in time instead: the robot is moved along the
+ * arc and each tracked obstacle along its predicted track, and the fastest
+ * speed at which they stay apart for the whole horizon is chosen. Slowing down
+ * is not always the answer, as a crossing obstacle may run into a robot that waits.
+ */
+public class SpeedGovernor
+{
+    private static final double STRAIGHT_CURVATURE = 1e-3;
+    private static final double STRAIGHT_ANGULAR_SPEED = 1e-3;
+    private static final int SPEED_STEPS = 4;
+    private static final int TIME_STEPS = 10;
+    private static final int BISECTIONS = 8;
+    private static final int ANGULAR_STEPS = 4;
+    private static final double MIN_SPEED = 0.05;
+
+    private final double horizon;
+    private final double robotRadius;
+    private final double sideClearance;
+    private final double stopDistance;
+    private FrameKey frame = new FrameKey();
+    private double frameLinearSpeed;
+    private double frameFromAngularSpeed;
+    private double frameAngularSpeed;
+    private double frameLimit;
+
+    /**
+     * @param horizon shortest allowed time to collision, in seconds
+     * @param robotRadius double
+     * @param sideClearance distance to keep to obstacles passed by
+     * @param stopDistance distance to keep to obstacles when stopped
+     */
+    public SpeedGovernor(double horizon, double robotRadius, double sideClearance, double stopDistance) {
+        this.horizon = horizon;
+        this.robotRadius = robotRadius;
+        this.sideClearance = sideClearance;
+        this.stopDistance = stopDistance;
+    }
+
+    /**
+     * Limits a linear speed for the given scan and the angular speeds the robot
+     * passes through, reusing the limit when neither the laser frame nor the
+     * speeds have changed
+     * @param frame timestamp of the laser frame
+     * @param echoes double[]
+     * @param linearSpeed double
+     * @param fromAngularSpeed angular speed last sent
+     * @param angularSpeed angular speed about to be sent
+     * @return the allowed linear speed
+     */
+    public double limit(long frame, double[] echoes, double linearSpeed, double fromAngularSpeed, double angularSpeed) {
+        if (Double.compare(linearSpeed, 0) <= 0) {
+            return linearSpeed;
+        }
+        if (this.frame.changed(frame) || linearSpeed != frameLinearSpeed
+                || fromAngularSpeed != frameFromAngularSpeed || angularSpeed != frameAngularSpeed) {
+            frameLinearSpeed = linearSpeed;
+            frameFromAngularSpeed = fromAngularSpeed;
+            frameAngularSpeed = angularSpeed;
+            frameLimit = search(echoes, linearSpeed, fromAngularSpeed, angularSpeed);
+        }
+        return frameLimit;
+    }
+
+    /**
+     * Finds the highest speed up to linearSpeed that keeps the time to collision
+     * above the horizon on every arc driven at that speed and an angular speed
+     * between fromAngularSpeed and angularSpeed
+     * @param echoes double[]
+     * @param linearSpeed double
+     * @param fromAngularSpeed double
+     * @param angularSpeed double
+     * @return double
+     */
+    private double search(double[] echoes, double linearSpeed, double fromAngularSpeed, double angularSpeed) {
+        if (allows(echoes, linearSpeed, fromAngularSpeed, angularSpeed)) {
+            return linearSpeed;
+        }
+        //Standing still is always allowed, bisect between it and the refused speed
+        double allowed = 0;
+        double refused = linearSpeed;
+        for (int i = 0; i < BISECTIONS; i++) {
+            double speed = (allowed + refused) / 2;
+            if (allows(echoes, speed, fromAngularSpeed, angularSpeed)) {
+                allowed = speed;
+            } else {
+                refused = speed;
+            }
+        }
+        //Creeping along ever tighter arcs gets nowhere, stop instead
+        return allowed < MIN_SPEED ? 0 : allowed;
+    }
+
+    private boolean allows(double[] echoes, double linearSpeed, double fromAngularSpeed, double angularSpeed) {
+        int steps = fromAngularSpeed == angularSpeed ? 0 : ANGULAR_STEPS;
+        for (int k = 0; k <= steps; k++) {
+            double turn = angularSpeed + (fromAngularSpeed - angularSpeed) * k / ANGULAR_STEPS;
+            double free = freeDistance(echoes, turn / linearSpeed);
+            if (linearSpeed > Math.max(0, free - stopDistance) / horizon) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Distance that can be travelled along an arc before hitting an echo
+     * @param echoes double[]
+     * @param curvature 1/radius of the arc, positive when turning left
+     * @return double
+     */
+    public double freeDistance(double[] echoes, double curvature) {
+        double free = LaserGeometry.MAX_RANGE;
+        double reach = robotRadius + sideClearance;
+        double r2 = reach * reach;
+        boolean straight = Math.abs(curvature) < STRAIGHT_CURVATURE;
+        double radius = straight ? 0 : 1 / curvature;
+        double absRadius = Math.abs(radius);
+        double side = Math.signum(radius);
+        int beams = LaserGeometry.usableBeams(echoes);
+        for (int i = 0; i < beams; i++) {
+            double range = echoes[i];
+            if (!LaserGeometry.isHit(range)) {
+                continue;
+            }
+            double px = range * LaserGeometry.cos(i);
+            double py = range * LaserGeometry.sin(i);
+            double distance;
+            if (straight) {
+                if (px <= 0 || py * py >= r2) {
+                    continue;
+                }
+                distance = px - Math.sqrt(r2 - py * py);
+            } else {
+                double dy = py - radius;
+                double fromCenter = Math.sqrt(px * px + dy * dy);
+                if (Math.abs(fromCenter - absRadius) >= reach) {
+                    continue;
+                }
+                //Angle travelled around the center of the arc before reaching the echo
+                double angle = Math.atan2(px, absRadius - side * py);
+                if (angle < 0) {
+                    continue;
+                }
+                distance = absRadius * angle - reach;
+            }
+            if (distance < free) {
+                free = Math.max(0, distance);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Limits a linear speed, already limited by the scan, for the moving obstacles
+     * of a tracker. The speed is lowered in steps until the robot and every moving
+     * obstacle stay further apart than the stop distance during the horizon. If
+     * no such speed exists, the step that keeps them furthest apart is taken,
+     * the slower one when steps are equal.
+     * @param tracker ObstacleTracker
+     * @param time current time
+     * @param x X of the robot at that time
+     * @param y Y of the robot at that time
+     * @param heading radians
+     * @param linearSpeed double
+     * @param angularSpeed double
+     * @return the allowed linear speed
+     */
+    public double limit(ObstacleTracker tracker, long time, double x, double y, double heading,
+                        double linearSpeed, double angularSpeed) {
+        if (Double.compare(linearSpeed, 0) <= 0) {
+            return linearSpeed;
+        }
+        double best = 0;
+        double bestSeparation = Double.NEGATIVE_INFINITY;
+        for (int step = SPEED_STEPS; step >= 0; step--) {
+            double speed = linearSpeed * step / SPEED_STEPS;
+            double separation = separation(tracker, time, x, y, heading, speed, angularSpeed);
+            if (separation >= 0) {
+                return speed;
+            }
+            if (separation >= bestSeparation) {
+                best = speed;
+                bestSeparation = separation;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Smallest distance between the robot, driving at the given speeds, and any
+     * moving obstacle during the horizon, less the distance they must keep
+     * @return meters, negative if the stop distance is not kept
+     */
+    private double separation(ObstacleTracker tracker, long time, double x, double y, double heading,
+                              double linearSpeed, double angularSpeed) {
+        boolean straight = Math.abs(angularSpeed) < STRAIGHT_ANGULAR_SPEED;
+        double separation = Double.POSITIVE_INFINITY;
+        for (int k = 1; k <= TIME_STEPS; k++) {
+            double t = horizon * k / TIME_STEPS;
+            //Position after t seconds, ahead and to the left of the robot
+            double ahead;
+            double left;
+            if (straight) {
+                ahead = linearSpeed * t;
+                left = 0;
+            } else {
+                double turned = angularSpeed * t;
+                ahead = linearSpeed / angularSpeed * Math.sin(turned);
+                left = linearSpeed / angularSpeed * (1 - Math.cos(turned));
+            }
+            double robotX = x + ahead * Math.cos(heading) - left * Math.sin(heading);
+            double robotY = y + ahead * Math.sin(heading) + left * Math.cos(heading);
+            long at = time + Math.round(t * 1000);
+            for (int i = 0; i < tracker.getTrackCount(); i++) {
+                if (!tracker.isMoving(i)) {
+                    continue;
+                }
+                double dx = tracker.predictX(i, at) - robotX;
+                double dy = tracker.predictY(i, at) - robotY;
+                double reach = robotRadius + tracker.getRadius(i) + stopDistance;
+                separation = Math.min(separation, Math.sqrt(dx * dx + dy * dy) - reach);
+            }
+        }
+        return separation;
+    }
+}
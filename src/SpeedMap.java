@@ -0,0 +1,209 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * What the robot has learned about driving a route, per bin of arc length:
+ * a speed ceiling, given as a factor of the speed the robot was started with,
+ * and what happened in the bin on the last lap (closest obstacle, largest
+ * cross-track error and whether the speed governor had to slow down).
+ *
+ * After a finished lap the ceiling of every driven bin where nothing happened
+ * is raised a step, and the ceiling of every other driven bin is cut. Bins the
+ * lap did not drive, e.g. before the point a resumed lap started from, keep
+ * their ceiling. The map is stored
+ * in a small binary file named after the hash of the route.
+ */
+public class SpeedMap
+{
+    private static final int MAGIC = 0x53504d31;
+    private static final int VERSION = 1;
+    private static final float CUT = 0.8f;
+
+    private final long routeHash;
+    private final double binLength;
+    private final float[] ceiling;
+    private final float[] clearance;
+    private final float[] trackingError;
+    private final boolean[] slowedDown;
+    private final boolean[] visited;
+
+    /**
+     * Create a map of a route where every ceiling is 1, i.e. the given speed
+     * @param route Route
+     * @param binLength meters
+     */
+    public SpeedMap(Route route, double binLength) {
+        this(route.getHash(), binLength, (int) Math.ceil(route.getLength() / binLength) + 1);
+        Arrays.fill(ceiling, 1);
+    }
+
+    private SpeedMap(long routeHash, double binLength, int bins) {
+        this.routeHash = routeHash;
+        this.binLength = binLength;
+        this.ceiling = new float[bins];
+        this.clearance = new float[bins];
+        this.trackingError = new float[bins];
+        this.slowedDown = new boolean[bins];
+        this.visited = new boolean[bins];
+        startLap();
+    }
+
+    /**
+     * Loads the map of a route from a directory, or creates a new one if there is
+     * none or the stored one was made with another bin length. A map that cannot
+     * be read, e.g. one cut short or made for another route, is reported and
+     * replaced by a new one, so that it never keeps the robot from driving.
+     * @param directory File
+     * @param route Route
+     * @param binLength double
+     * @return SpeedMap
+     */
+    public static SpeedMap load(File directory, Route route, double binLength) {
+        File file = fileOf(directory, route.getHash());
+        if (!file.exists()) {
+            return new SpeedMap(route, binLength);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readShort() != VERSION || in.readLong() != route.getHash()) {
+                    throw new IOException("not a speed map of this route");
+                }
+                double storedBinLength = in.readFloat();
+                int bins = in.readInt();
+                if (storedBinLength != (float) binLength) {
+                    return new SpeedMap(route, binLength);
+                }
+                SpeedMap map = new SpeedMap(route, binLength);
+                if (bins != map.ceiling.length) {
+                    throw new IOException(bins + " bins, the route has " + map.ceiling.length);
+                }
+                for (int i = 0; i < bins; i++) {
+                    map.ceiling[i] = in.readFloat();
+                    map.clearance[i] = in.readFloat();
+                    map.trackingError[i] = in.readFloat();
+                    map.slowedDown[i] = in.readBoolean();
+                }
+                return map;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring speed map " + file + ": " + e);
+            return new SpeedMap(route, binLength);
+        }
+    }
+
+    /**
+     * Stores the map, replacing the previous file in one step
+     * @param directory File
+     * @throws IOException
+     */
+    public void save(File directory) throws IOException {
+        AtomicFile.write(fileOf(directory, routeHash), new AtomicFile.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(routeHash);
+                out.writeFloat((float) binLength);
+                out.writeInt(ceiling.length);
+                for (int i = 0; i < ceiling.length; i++) {
+                    out.writeFloat(ceiling[i]);
+                    out.writeFloat(clearance[i]);
+                    out.writeFloat(trackingError[i]);
+                    out.writeBoolean(slowedDown[i]);
+                }
+            }
+        });
+    }
+
+    private static File fileOf(File directory, long routeHash) {
+        return new File(directory, String.format("%016x.speedmap", routeHash));
+    }
+
+    /**
+     * Copies the map, so that it can be stored while the original is driven on
+     * @return SpeedMap
+     */
+    public SpeedMap copy() {
+        SpeedMap map = new SpeedMap(routeHash, binLength, ceiling.length);
+        System.arraycopy(ceiling, 0, map.ceiling, 0, ceiling.length);
+        System.arraycopy(clearance, 0, map.clearance, 0, clearance.length);
+        System.arraycopy(trackingError, 0, map.trackingError, 0, trackingError.length);
+        System.arraycopy(slowedDown, 0, map.slowedDown, 0, slowedDown.length);
+        System.arraycopy(visited, 0, map.visited, 0, visited.length);
+        return map;
+    }
+
+    /**
+     * Forgets what happened on the previous lap
+     */
+    public void startLap() {
+        Arrays.fill(clearance, Float.MAX_VALUE);
+        Arrays.fill(trackingError, 0);
+        Arrays.fill(slowedDown, false);
+        Arrays.fill(visited, false);
+    }
+
+    public int bin(double arcLength) {
+        return Math.max(0, Math.min(ceiling.length - 1, (int) (arcLength / binLength)));
+    }
+
+    /**
+     * Speed ceiling of a bin, as a factor of the speed the robot was started with
+     * @param bin int
+     * @return double
+     */
+    public double getCeiling(int bin) {
+        return ceiling[bin];
+    }
+
+    /**
+     * Records what happened during a tick in a bin
+     * @param bin int
+     * @param clearance distance to the closest obstacle
+     * @param trackingError distance to the route
+     * @param slowedDown whether the speed governor lowered the speed
+     */
+    public void record(int bin, double clearance, double trackingError, boolean slowedDown) {
+        this.clearance[bin] = Math.min(this.clearance[bin], (float) clearance);
+        this.trackingError[bin] = Math.max(this.trackingError[bin], (float) Math.abs(trackingError));
+        this.slowedDown[bin] |= slowedDown;
+        this.visited[bin] = true;
+    }
+
+    /**
+     * Adjusts the ceilings after a finished lap
+     * @param minClearance a bin is clean if no obstacle came closer than this
+     * @param maxTrackingError and the robot stayed within this distance of the route
+     * @param step how much the ceiling of a clean bin is raised
+     * @param maxCeiling highest ceiling
+     */
+    public void finishLap(double minClearance, double maxTrackingError, double step, double maxCeiling) {
+        for (int i = 0; i < ceiling.length; i++) {
+            if (!visited[i]) {
+                continue;
+            }
+            boolean clean = !slowedDown[i] && clearance[i] >= minClearance
+                    && trackingError[i] <= maxTrackingError;
+            if (clean) {
+                ceiling[i] = (float) Math.min(maxCeiling, ceiling[i] + step);
+            } else {
+                ceiling[i] = Math.max(1, ceiling[i] * CUT);
+            }
+        }
+    }
+
+    public int getBinCount() {
+        return ceiling.length;
+    }
+
+    public long getRouteHash() {
+        return routeHash;
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads for the background work of the controller. They are daemons, so
+ * that a worker left idle never keeps the program from exiting.
+ */
+public final class Threads
+{
+    private Threads() {
+    }
+
+    /**
+     * Makes daemon threads with the given name
+     * @param name String
+     * @return ThreadFactory
+     */
+    public static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Measures how well a lap followed its route. Every tick records the
+ * cross-track error, the heading error against the direction of the route and
+ * the commanded speed. Each sample holds until the next tick, so all totals
+ * are weighted by time. The samples go into fixed histograms and into
+ * summaries per section of arc length. Recording only updates preallocated
+ * arrays. The report at the end of the lap lists the sections where the most
+ * time was lost compared to driving them at the set speed.
+ * Times are in milliseconds, distances in meters, angles in radians.
+ */
+public class TrackingAnalytics
+{
+    public static final double SECTION_LENGTH = 2.0;
+    public static final double CROSS_TRACK_BIN = 0.05;
+    public static final double HEADING_BIN = Math.toRadians(5);
+    public static final double SPEED_BIN = 0.1;
+    public static final int HISTOGRAM_BINS = 20;
+    private static final double STOPPED_SPEED = 0.01;
+    private static final int WORST_SECTIONS = 5;
+
+    private final Route route;
+    private final double speed;
+    private final long start;
+    private long finish = -1;
+
+    private final long[] crossTrackHistogram = new long[HISTOGRAM_BINS];
+    private final long[] headingHistogram = new long[HISTOGRAM_BINS];
+    private final long[] speedHistogram = new long[HISTOGRAM_BINS];
+
+    private final long[] sectionTime;
+    private final long[] sectionStopped;
+    private final double[] sectionCrossTrack;
+    private final float[] sectionMaxCrossTrack;
+    private final float[] sectionMaxHeading;
+
+    private long ticks;
+    private long stopped;
+    private double crossTrackSum;
+    private double maxCrossTrack;
+    private double headingSum;
+    private double maxHeading;
+    private double meanPoseDrift;
+    private double maxPoseDrift;
+
+    private long lastTime;
+    private int lastSection;
+    private double lastCrossTrack;
+    private double lastHeading;
+    private double lastSpeed;
+
+    /**
+     * Starts measuring a lap
+     * @param route Route
+     * @param speed the speed the robot was started with
+     * @param start time the lap started
+     */
+    public TrackingAnalytics(Route route, double speed, long start) {
+        this.route = route;
+        this.speed = speed;
+        this.start = start;
+        this.lastTime = start;
+        int sections = (int) Math.ceil(route.getLength() / SECTION_LENGTH) + 1;
+        sectionTime = new long[sections];
+        sectionStopped = new long[sections];
+        sectionCrossTrack = new double[sections];
+        sectionMaxCrossTrack = new float[sections];
+        sectionMaxHeading = new float[sections];
+    }
+
+    /**
+     * Records a tick
+     * @param time long
+     * @param arcLength where on the route the robot is
+     * @param crossTrackError signed distance to the route
+     * @param headingError signed difference between heading and route direction
+     * @param speed commanded linear speed
+     */
+    public void record(long time, double arcLength, double crossTrackError, double headingError, double speed) {
+        hold(time);
+        ticks++;
+        lastSection = Math.max(0, Math.min(sectionTime.length - 1, (int) (arcLength / SECTION_LENGTH)));
+        lastCrossTrack = Math.abs(crossTrackError);
+        lastHeading = Math.abs(headingError);
+        lastSpeed = speed;
+        maxCrossTrack = Math.max(maxCrossTrack, lastCrossTrack);
+        maxHeading = Math.max(maxHeading, lastHeading);
+        sectionMaxCrossTrack[lastSection] = Math.max(sectionMaxCrossTrack[lastSection], (float) lastCrossTrack);
+        sectionMaxHeading[lastSection] = Math.max(sectionMaxHeading[lastSection], (float) lastHeading);
+    }
+
+    /**
+     * Ends the lap
+     * @param time long
+     */
+    public void finish(long time) {
+        hold(time);
+        finish = time;
+    }
+
+    /**
+     * Credits the time since the previous tick to the sample of that tick
+     * @param time long
+     */
+    private void hold(long time) {
+        long dt = time - lastTime;
+        lastTime = time;
+        if (ticks == 0 || dt <= 0) {
+            return;
+        }
+        crossTrackHistogram[bin(lastCrossTrack, CROSS_TRACK_BIN)] += dt;
+        headingHistogram[bin(lastHeading, HEADING_BIN)] += dt;
+        speedHistogram[bin(lastSpeed, SPEED_BIN)] += dt;
+        crossTrackSum += lastCrossTrack * dt;
+        headingSum += lastHeading * dt;
+        sectionTime[lastSection] += dt;
+        sectionCrossTrack[lastSection] += lastCrossTrack * dt;
+        if (lastSpeed < STOPPED_SPEED) {
+            stopped += dt;
+            sectionStopped[lastSection] += dt;
+        }
+    }
+
+    private static int bin(double value, double width) {
+        return Math.max(0, Math.min(HISTOGRAM_BINS - 1, (int) (value / width)));
+    }
+
+    /**
+     * Time from the start of the lap to its finish, or to the last tick if it is not finished
+     * @return long
+     */
+    public long getLapTime() {
+        return (finish >= 0 ? finish : lastTime) - start;
+    }
+
+    public long getStoppedTime() {
+        return stopped;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public double getMeanCrossTrackError() {
+        long time = getLapTime();
+        return time > 0 ? crossTrackSum / time : 0;
+    }
+
+    public double getMaxCrossTrackError() {
+        return maxCrossTrack;
+    }
+
+    public double getMeanHeadingError() {
+        long time = getLapTime();
+        return time > 0 ? headingSum / time : 0;
+    }
+
+    public double getMaxHeadingError() {
+        return maxHeading;
+    }
+
+    /**
+     * Records how far the measured positions were from the predicted ones during the lap
+     * @param mean meters
+     * @param max meters
+     */
+    public void setPoseDrift(double mean, double max) {
+        meanPoseDrift = mean;
+        maxPoseDrift = max;
+    }
+
+    public double getMeanPoseDrift() {
+        return meanPoseDrift;
+    }
+
+    public double getMaxPoseDrift() {
+        return maxPoseDrift;
+    }
+
+    /**
+     * Time spent per bin of CROSS_TRACK_BIN meters, the last bin holds everything beyond
+     * @return long[]
+     */
+    public long[] getCrossTrackHistogram() {
+        return crossTrackHistogram;
+    }
+
+    /**
+     * Time spent per bin of HEADING_BIN radians, the last bin holds everything beyond
+     * @return long[]
+     */
+    public long[] getHeadingHistogram() {
+        return headingHistogram;
+    }
+
+    /**
+     * Time spent per bin of SPEED_BIN m/s, the last bin holds everything beyond
+     * @return long[]
+     */
+    public long[] getSpeedHistogram() {
+        return speedHistogram;
+    }
+
+    public int getSectionCount() {
+        return sectionTime.length;
+    }
+
+    public long getSectionTime(int section) {
+        return sectionTime[section];
+    }
+
+    /**
+     * Time spent in a section beyond what driving its length at the set speed takes
+     * @param section int
+     * @return long
+     */
+    public long getLostTime(int section) {
+        if (sectionTime[section] == 0) {
+            return 0;
+        }
+        double from = section * SECTION_LENGTH;
+        double length = Math.max(0, Math.min(SECTION_LENGTH, route.getLength() - from));
+        return sectionTime[section] - Math.round(1000 * length / speed);
+    }
+
+    /**
+     * Writes the report of the lap
+     * @param out PrintStream
+     */
+    public void report(PrintStream out) {
+        out.printf("Lap time %.2f s, stopped %.2f s, %d ticks%n",
+                getLapTime() / 1000.0, stopped / 1000.0, ticks);
+        out.printf("Cross-track error: mean %.3f m, max %.3f m%n",
+                getMeanCrossTrackError(), maxCrossTrack);
+        out.printf("Heading error: mean %.1f deg, max %.1f deg%n",
+                Math.toDegrees(getMeanHeadingError()), Math.toDegrees(maxHeading));
+        out.printf("Pose drift: mean %.3f m, max %.3f m%n", meanPoseDrift, maxPoseDrift);
+        out.println();
+        histogram(out, "Cross-track error (m)", crossTrackHistogram, CROSS_TRACK_BIN);
+        histogram(out, "Heading error (deg)", headingHistogram, Math.toDegrees(HEADING_BIN));
+        histogram(out, "Speed (m/s)", speedHistogram, SPEED_BIN);
+
+        Integer[] sections = new Integer[sectionTime.length];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = i;
+        }
+        Arrays.sort(sections, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(getLostTime(b), getLostTime(a));
+            }
+        });
+        out.println("Worst sections");
+        for (int i = 0; i < Math.min(WORST_SECTIONS, sections.length); i++) {
+            int s = sections[i];
+            if (getLostTime(s) <= 0) {
+                break;
+            }
+            out.printf("  %6.1f-%6.1f m  time %6.2f s  lost %6.2f s  stopped %6.2f s"
+                            + "  error mean %.3f max %.3f m  heading max %5.1f deg%n",
+                    s * SECTION_LENGTH, Math.min(route.getLength(), (s + 1) * SECTION_LENGTH),
+                    sectionTime[s] / 1000.0, getLostTime(s) / 1000.0, sectionStopped[s] / 1000.0,
+                    sectionCrossTrack[s] / sectionTime[s], sectionMaxCrossTrack[s],
+                    Math.toDegrees(sectionMaxHeading[s]));
+        }
+    }
+
+    private void histogram(PrintStream out, String title, long[] histogram, double width) {
+        long total = 0;
+        for (long time : histogram) {
+            total += time;
+        }
+        out.println(title);
+        for (int i = 0; i < histogram.length && total > 0; i++) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            String upper = i == histogram.length - 1 ? "      " : String.format("%6.2f", (i + 1) * width);
+            out.printf("  %6.2f-%s %5.1f%%%n", i * width, upper, 100.0 * histogram[i] / total);
+        }
+        out.println();
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches for the TuningProfile with the shortest lap time on a path, by
+ * driving simulated laps with random profiles on all cores.
+ * Laps that collide or do not finish are discarded.
+ *
+ * Usage: Tuner path.json speed candidates best-profile.json [obstacles.json]
+ */
+public class Tuner
+{
+    private static final double CORRIDOR_WIDTH = 1.0;
+    private static final long CALL_MILLIS = 20;
+    private static final long TIME_LIMIT = 10 * 60 * 1000;
+
+    // Name, lowest and highest value of each tuned value. LookAheadDistance and
+    // PositionsToSkip are left out, the controller replaces them on the first tick.
+    private static final Object[][] SEARCH_SPACE = {
+            {TuningProfile.MIN_LOOK_AHEAD_DISTANCE, 0.05, 0.4},
+            {TuningProfile.MAX_LOOK_AHEAD_DISTANCE, 0.5, 3.0},
+            {TuningProfile.LOOK_AHEAD_LASER_MARGIN, 10.0, 60.0},
+            {TuningProfile.STRAIGHT_POSITIONS_TO_SKIP, 5.0, 20.0},
+            {TuningProfile.CURVE_POSITIONS_TO_SKIP, 2.0, 10.0},
+            {TuningProfile.SHARP_POSITIONS_TO_SKIP, 1.0, 5.0},
+            {TuningProfile.HEADING_MARGIN, 2.0, 15.0},
+            {TuningProfile.ANGULAR_SPEED, 0.5, 3.0},
+            {TuningProfile.STOP_TURN_MARGIN, 0.1, 0.35},
+            {TuningProfile.OBSTACLE_MARGIN, 0.4, 1.2},
+            {TuningProfile.AVOID_ANGLE, 10.0, 40.0},
+            {TuningProfile.STRAIGHT_MARGIN, 2.0, 10.0},
+            {TuningProfile.CURVE_MARGIN, 10.0, 40.0},
+            {TuningProfile.COLLISION_HORIZON, 0.5, 2.5},
+    };
+
+    private final Position[] path;
+    private final double[][] obstacles;
+    private final double speed;
+
+    public Tuner(Position[] path, double[][] obstacles, double speed) {
+        this.path = path;
+        this.obstacles = obstacles;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Position[] path = Main.readPath(args[0]);
+        double[][] obstacles = args.length > 4
+                ? SimulatedRobot.readObstacles(new File(args[4])) : new double[0][];
+        Tuner tuner = new Tuner(path, obstacles, Double.parseDouble(args[1]));
+        TuningProfile best = tuner.search(Integer.parseInt(args[2]), new Random(1));
+        if (best == null) {
+            System.out.println("No profile finished a lap");
+            return;
+        }
+        best.write(new File(args[3]));
+        System.out.println("Best profile " + best);
+    }
+
+    /**
+     * Drives one lap with each of the given number of profiles, the default
+     * profile being the first, and returns the fastest
+     * @param candidates int
+     * @param random Random
+     * @return the fastest profile, or null if none finished
+     * @throws Exception
+     */
+    public TuningProfile search(int candidates, Random random) throws Exception {
+        List<TuningProfile> profiles = new ArrayList<TuningProfile>();
+        profiles.add(TuningProfile.DEFAULT);
+        while (profiles.size() < candidates) {
+            profiles.add(randomProfile(random));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<Long>> lapTimes = new ArrayList<Future<Long>>();
+        for (final TuningProfile profile : profiles) {
+            lapTimes.add(executor.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    return lap(profile);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        TuningProfile best = null;
+        long bestTime = Long.MAX_VALUE;
+        try {
+            for (int i = 0; i < profiles.size(); i++) {
+                long lapTime = lapTimes.get(i).get();
+                if (lapTime < bestTime) {
+                    bestTime = lapTime;
+                    best = profiles.get(i);
+                    System.out.println("Lap of " + lapTime + " ms with " + best);
+                }
+            }
+        } catch (Exception e) {
+            //The search is over, do not leave the remaining laps running
+            executor.shutdownNow();
+            throw e;
+        }
+        return best;
+    }
+
+    /**
+     * Drives a simulated lap
+     * @param profile TuningProfile
+     * @return lap time in simulated milliseconds, Long.MAX_VALUE if the lap failed
+     * @throws Exception when the controller fails, as opposed to the lap
+     */
+    public long lap(TuningProfile profile) throws Exception {
+        SimulatedRobot robot = new SimulatedRobot(path, obstacles, profile.getRobotRadius(),
+                CORRIDOR_WIDTH, CALL_MILLIS, TIME_LIMIT);
+        try {
+            new RoB1(robot, profile).run(path, speed);
+            return robot.currentTimeMillis();
+        } catch (SimulationException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static TuningProfile randomProfile(Random random) {
+        TuningProfile profile = TuningProfile.DEFAULT;
+        for (Object[] range : SEARCH_SPACE) {
+            double low = (Double) range[1];
+            double high = (Double) range[2];
+            profile = profile.with((String) range[0], low + random.nextDouble() * (high - low));
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The constants that decide how RoB1 drives. A profile is immutable; with()
+ * returns a copy with one value changed. Values are named the way they are
+ * stored in a profile file, which is a JSON object of name/value pairs.
+ * Distances are in meters, speeds in m/s or rad/s and charge in percent of a
+ * full battery. Angles are stored in
+ * degrees, except the turn margins, which are fractions of a whole turn, and
+ * are returned in radians. Laser margins and the avoid angle count beams.
+ */
+public final class TuningProfile
+{
+    public static final String LOOK_AHEAD_DISTANCE = "LookAheadDistance";
+    public static final String MIN_LOOK_AHEAD_DISTANCE = "MinLookAheadDistance";
+    public static final String MAX_LOOK_AHEAD_DISTANCE = "MaxLookAheadDistance";
+    public static final String LOOK_AHEAD_LASER_MARGIN = "LookAheadLaserMargin";
+    public static final String POSITIONS_TO_SKIP = "PositionsToSkip";
+    public static final String STRAIGHT_MARGIN = "StraightMargin";
+    public static final String CURVE_MARGIN = "CurveMargin";
+    public static final String STRAIGHT_POSITIONS_TO_SKIP = "StraightPositionsToSkip";
+    public static final String CURVE_POSITIONS_TO_SKIP = "CurvePositionsToSkip";
+    public static final String SHARP_POSITIONS_TO_SKIP = "SharpPositionsToSkip";
+    public static final String HEADING_MARGIN = "HeadingMargin";
+    public static final String ANGULAR_SPEED = "AngularSpeed";
+    public static final String SLOW_TURN_MARGIN = "SlowTurnMargin";
+    public static final String SLOW_TURN_SPEED = "SlowTurnSpeed";
+    public static final String STOP_TURN_MARGIN = "StopTurnMargin";
+    public static final String OBSTACLE_MARGIN = "ObstacleMargin";
+    public static final String AVOID_ANGLE = "AvoidAngle";
+    public static final String AVOID_SPEED = "AvoidSpeed";
+    public static final String COLLISION_HORIZON = "CollisionHorizon";
+    public static final String STOP_DISTANCE = "StopDistance";
+    public static final String SIDE_CLEARANCE = "SideClearance";
+    public static final String ROBOT_RADIUS = "RobotRadius";
+    public static final String BLOCKED_TIMEOUT = "BlockedTimeout";
+    public static final String REJOIN_DISTANCE = "RejoinDistance";
+    public static final String PROGRESS_DISTANCE = "ProgressDistance";
+    public static final String GRID_MARGIN = "GridMargin";
+    public static final String GRID_RESOLUTION = "GridResolution";
+    public static final String SPEED_MAP_BIN_LENGTH = "SpeedMapBinLength";
+    public static final String SPEED_MAP_STEP = "SpeedMapStep";
+    public static final String SPEED_MAP_MAX_CEILING = "SpeedMapMaxCeiling";
+    public static final String SPEED_MAP_CLEARANCE = "SpeedMapClearance";
+    public static final String SPEED_MAP_TRACKING_ERROR = "SpeedMapTrackingError";
+    public static final String FULL_SPEED_TILT = "FullSpeedTilt";
+    public static final String MAX_TILT = "MaxTilt";
+    public static final String MAX_TILT_SPEED_FACTOR = "MaxTiltSpeedFactor";
+    public static final String FULL_SPEED_CHARGE = "FullSpeedCharge";
+    public static final String EMPTY_CHARGE_SPEED_FACTOR = "EmptyChargeSpeedFactor";
+
+    public static final TuningProfile DEFAULT;
+
+    static {
+        Map<String, Double> defaults = new LinkedHashMap<String, Double>();
+        defaults.put(LOOK_AHEAD_DISTANCE, 0.4);
+        defaults.put(MIN_LOOK_AHEAD_DISTANCE, 0.1);
+        defaults.put(MAX_LOOK_AHEAD_DISTANCE, 1.5);
+        defaults.put(LOOK_AHEAD_LASER_MARGIN, 40.0);
+        defaults.put(POSITIONS_TO_SKIP, 5.0);
+        defaults.put(STRAIGHT_MARGIN, 5.0);
+        defaults.put(CURVE_MARGIN, 20.0);
+        defaults.put(STRAIGHT_POSITIONS_TO_SKIP, 10.0);
+        defaults.put(CURVE_POSITIONS_TO_SKIP, 5.0);
+        defaults.put(SHARP_POSITIONS_TO_SKIP, 2.0);
+        defaults.put(HEADING_MARGIN, 5.0);
+        defaults.put(ANGULAR_SPEED, 2.0);
+        defaults.put(SLOW_TURN_MARGIN, 0.07);
+        defaults.put(SLOW_TURN_SPEED, 0.5);
+        defaults.put(STOP_TURN_MARGIN, 0.20);
+        defaults.put(OBSTACLE_MARGIN, 0.7);
+        defaults.put(AVOID_ANGLE, 20.0);
+        defaults.put(AVOID_SPEED, 0.7);
+        defaults.put(COLLISION_HORIZON, 1.5);
+        defaults.put(STOP_DISTANCE, 0.1);
+        defaults.put(SIDE_CLEARANCE, 0.05);
+        defaults.put(ROBOT_RADIUS, 0.3);
+        defaults.put(BLOCKED_TIMEOUT, 3000.0);
+        defaults.put(REJOIN_DISTANCE, 1.5);
+        defaults.put(PROGRESS_DISTANCE, 0.05);
+        defaults.put(GRID_MARGIN, 5.0);
+        defaults.put(GRID_RESOLUTION, 0.1);
+        defaults.put(SPEED_MAP_BIN_LENGTH, 0.5);
+        defaults.put(SPEED_MAP_STEP, 0.05);
+        defaults.put(SPEED_MAP_MAX_CEILING, 1.5);
+        defaults.put(SPEED_MAP_CLEARANCE, 0.5);
+        defaults.put(SPEED_MAP_TRACKING_ERROR, 0.3);
+        defaults.put(FULL_SPEED_TILT, 5.0);
+        defaults.put(MAX_TILT, 20.0);
+        defaults.put(MAX_TILT_SPEED_FACTOR, 0.3);
+        defaults.put(FULL_SPEED_CHARGE, 30.0);
+        defaults.put(EMPTY_CHARGE_SPEED_FACTOR, 0.5);
+        DEFAULT = new TuningProfile(defaults);
+    }
+
+    private final Map<String, Double> values;
+    private final double lookAheadDistance;
+    private final double minLookAheadDistance;
+    private final double maxLookAheadDistance;
+    private final int lookAheadLaserMargin;
+    private final int positionsToSkip;
+    private final double straightMargin;
+    private final double curveMargin;
+    private final int straightPositionsToSkip;
+    private final int curvePositionsToSkip;
+    private final int sharpPositionsToSkip;
+    private final double headingMargin;
+    private final double angularSpeed;
+    private final double slowTurnMargin;
+    private final double slowTurnSpeed;
+    private final double stopTurnMargin;
+    private final double obstacleMargin;
+    private final int avoidAngle;
+    private final double avoidSpeed;
+    private final double collisionHorizon;
+    private final double stopDistance;
+    private final double sideClearance;
+    private final double robotRadius;
+    private final long blockedTimeout;
+    private final double rejoinDistance;
+    private final double progressDistance;
+    private final double gridMargin;
+    private final double gridResolution;
+    private final double speedMapBinLength;
+    private final double speedMapStep;
+    private final double speedMapMaxCeiling;
+    private final double speedMapClearance;
+    private final double speedMapTrackingError;
+    private final double fullSpeedTilt;
+    private final double maxTilt;
+    private final double maxTiltSpeedFactor;
+    private final double fullSpeedCharge;
+    private final double emptyChargeSpeedFactor;
+
+    private TuningProfile(Map<String, Double> values) {
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<String, Double>(values));
+        lookAheadDistance = values.get(LOOK_AHEAD_DISTANCE);
+        minLookAheadDistance = values.get(MIN_LOOK_AHEAD_DISTANCE);
+        maxLookAheadDistance = values.get(MAX_LOOK_AHEAD_DISTANCE);
+        lookAheadLaserMargin = (int) Math.round(values.get(LOOK_AHEAD_LASER_MARGIN));
+        positionsToSkip = (int) Math.round(values.get(POSITIONS_TO_SKIP));
+        straightMargin = Math.toRadians(values.get(STRAIGHT_MARGIN));
+        curveMargin = Math.toRadians(values.get(CURVE_MARGIN));
+        straightPositionsToSkip = (int) Math.round(values.get(STRAIGHT_POSITIONS_TO_SKIP));
+        curvePositionsToSkip = (int) Math.round(values.get(CURVE_POSITIONS_TO_SKIP));
+        sharpPositionsToSkip = (int) Math.round(values.get(SHARP_POSITIONS_TO_SKIP));
+        headingMargin = Math.toRadians(values.get(HEADING_MARGIN));
+        angularSpeed = values.get(ANGULAR_SPEED);
+        slowTurnMargin = Angles.TWO_PI * values.get(SLOW_TURN_MARGIN);
+        slowTurnSpeed = values.get(SLOW_TURN_SPEED);
+        stopTurnMargin = Angles.TWO_PI * values.get(STOP_TURN_MARGIN);
+        obstacleMargin = values.get(OBSTACLE_MARGIN);
+        avoidAngle = (int) Math.round(values.get(AVOID_ANGLE));
+        avoidSpeed = values.get(AVOID_SPEED);
+        collisionHorizon = values.get(COLLISION_HORIZON);
+        stopDistance = values.get(STOP_DISTANCE);
+        sideClearance = values.get(SIDE_CLEARANCE);
+        robotRadius = values.get(ROBOT_RADIUS);
+        blockedTimeout = Math.round(values.get(BLOCKED_TIMEOUT));
+        rejoinDistance = values.get(REJOIN_DISTANCE);
+        progressDistance = values.get(PROGRESS_DISTANCE);
+        gridMargin = values.get(GRID_MARGIN);
+        gridResolution = values.get(GRID_RESOLUTION);
+        speedMapBinLength = values.get(SPEED_MAP_BIN_LENGTH);
+        speedMapStep = values.get(SPEED_MAP_STEP);
+        speedMapMaxCeiling = values.get(SPEED_MAP_MAX_CEILING);
+        speedMapClearance = values.get(SPEED_MAP_CLEARANCE);
+        speedMapTrackingError = values.get(SPEED_MAP_TRACKING_ERROR);
+        fullSpeedTilt = Math.toRadians(values.get(FULL_SPEED_TILT));
+        maxTilt = Math.toRadians(values.get(MAX_TILT));
+        maxTiltSpeedFactor = values.get(MAX_TILT_SPEED_FACTOR);
+        fullSpeedCharge = values.get(FULL_SPEED_CHARGE);
+        emptyChargeSpeedFactor = values.get(EMPTY_CHARGE_SPEED_FACTOR);
+    }
+
+    /**
+     * Returns a copy of this profile with one value changed
+     * @param name one of the names defined in this class
+     * @param value double
+     * @return TuningProfile
+     */
+    public TuningProfile with(String name, double value) {
+        if (!values.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown tuning value " + name);
+        }
+        Map<String, Double> changed = new LinkedHashMap<String, Double>(values);
+        changed.put(name, value);
+        return new TuningProfile(changed);
+    }
+
+    public double get(String name) {
+        return values.get(name);
+    }
+
+    public Map<String, Double> toMap() {
+        return values;
+    }
+
+    /**
+     * Reads a profile file. Values missing from the file keep their defaults.
+     * @param file File
+     * @return TuningProfile
+     * @throws Exception
+     */
+    public static TuningProfile read(File file) throws Exception {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> data = new ObjectMapper().readValue(file, Map.class);
+        TuningProfile profile = DEFAULT;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            profile = profile.with(entry.getKey(), ((Number) entry.getValue()).doubleValue());
+        }
+        return profile;
+    }
+
+    /**
+     * Writes the profile as a JSON object
+     * @param file File
+     * @throws Exception
+     */
+    public void write(File file) throws Exception {
+        new ObjectMapper().writeValue(file, values);
+    }
+
+    public double getLookAheadDistance() { return lookAheadDistance; }
+    public double getMinLookAheadDistance() { return minLookAheadDistance; }
+    public double getMaxLookAheadDistance() { return maxLookAheadDistance; }
+    public int getLookAheadLaserMargin() { return lookAheadLaserMargin; }
+    public int getPositionsToSkip() { return positionsToSkip; }
+    public double getStraightMargin() { return straightMargin; }
+    public double getCurveMargin() { return curveMargin; }
+    public int getStraightPositionsToSkip() { return straightPositionsToSkip; }
+    public int getCurvePositionsToSkip() { return curvePositionsToSkip; }
+    public int getSharpPositionsToSkip() { return sharpPositionsToSkip; }
+    public double getHeadingMargin() { return headingMargin; }
+    public double getAngularSpeed() { return angularSpeed; }
+    public double getSlowTurnMargin() { return slowTurnMargin; }
+    public double getSlowTurnSpeed() { return slowTurnSpeed; }
+    public double getStopTurnMargin() { return stopTurnMargin; }
+    public double getObstacleMargin() { return obstacleMargin; }
+    public int getAvoidAngle() { return avoidAngle; }
+    public double getAvoidSpeed() { return avoidSpeed; }
+    public double getCollisionHorizon() { return collisionHorizon; }
+    public double getStopDistance() { return stopDistance; }
+    public double getSideClearance() { return sideClearance; }
+    public double getRobotRadius() { return robotRadius; }
+    public long getBlockedTimeout() { return blockedTimeout; }
+    public double getRejoinDistance() { return rejoinDistance; }
+    public double getProgressDistance() { return progressDistance; }
+    public double getGridMargin() { return gridMargin; }
+    public double getGridResolution() { return gridResolution; }
+    public double getSpeedMapBinLength() { return speedMapBinLength; }
+    public double getSpeedMapStep() { return speedMapStep; }
+    public double getSpeedMapMaxCeiling() { return speedMapMaxCeiling; }
+    public double getSpeedMapClearance() { return speedMapClearance; }
+    public double getSpeedMapTrackingError() { return speedMapTrackingError; }
+    public double getFullSpeedTilt() { return fullSpeedTilt; }
+    public double getMaxTilt() { return maxTilt; }
+    public double getMaxTiltSpeedFactor() { return maxTiltSpeedFactor; }
+    public double getFullSpeedCharge() { return fullSpeedCharge; }
+    public double getEmptyChargeSpeedFactor() { return emptyChargeSpeedFactor; }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}